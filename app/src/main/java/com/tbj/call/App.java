@@ -4,10 +4,6 @@ import android.app.Application;
 import android.content.Context;
 import android.content.Intent;
 
-import com.tbj.call.ws.WsManager;
-
-import java.util.HashMap;
-
 import okhttp3.mockwebserver.MockWebServer;
 
 /**
@@ -18,8 +14,6 @@ public class App extends Application {
 
     public static Context sContext;
 
-    private static HashMap<String, WsManager> mWsMap = new HashMap<>();
-
     @Override
     public void onCreate() {
         super.onCreate();
@@ -32,8 +26,4 @@ public class App extends Application {
         return this;
     }
 
-    public static HashMap<String, WsManager> getWsMap(){
-        return mWsMap;
-    }
-
 }
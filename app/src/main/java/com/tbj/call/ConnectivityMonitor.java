@@ -0,0 +1,151 @@
+package com.tbj.call;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.RequiresApi;
+import android.util.Log;
+
+/**
+ * 网络变化监听，替代直接处理 CONNECTIVITY_ACTION 广播
+ *
+ * - API 24+ 用 registerDefaultNetworkCallback，21 ~ 23 用 registerNetworkCallback，更低版本退回广播
+ * - 系统回调和广播只是触发信号，统一防抖 DEBOUNCE 毫秒后再读取当前默认网络，网络来回抖动只会回调最后的结果
+ * - 按网络身份（类型 + 具体是哪个网络）去重，重复的广播、同一网络的能力变化不会回调
+ *
+ * 回调在主线程
+ */
+public final class ConnectivityMonitor {
+
+    private static final String TAG = "MockWebSocket";
+
+    static final long DEBOUNCE = 800; // ms
+
+    public interface Listener {
+        /**
+         * 默认网络真正发生了变化
+         * @param type NetworkUtils.TYPE_WIFI / TYPE_MOBILE / TYPE_UNKNOW / NO_NET
+         */
+        void onNetworkChanged(String type);
+    }
+
+    private final Context mContext;
+    private final Listener mListener;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mEvaluate = this::evaluate;
+
+    private BroadcastReceiver mReceiver;
+    private ConnectivityManager.NetworkCallback mCallback;
+    private String mIdentity; // 上次回调时的网络身份
+
+    public ConnectivityMonitor(Context context, Listener listener) {
+        mContext = context.getApplicationContext();
+        mListener = listener;
+    }
+
+    public void start() {
+        ConnectivityManager manager = connectivityManager();
+        if (manager == null) return;
+        // 以启动时的网络为基准，之后只回调变化
+        mIdentity = identity(manager);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            registerCallback(manager);
+        } else {
+            mReceiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    if (intent != null && ConnectivityManager.CONNECTIVITY_ACTION.equals(intent.getAction())) {
+                        onSignal();
+                    }
+                }
+            };
+            mContext.registerReceiver(mReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        }
+    }
+
+    public void stop() {
+        mHandler.removeCallbacks(mEvaluate);
+        if (mReceiver != null) {
+            mContext.unregisterReceiver(mReceiver);
+            mReceiver = null;
+        }
+        if (mCallback != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            ConnectivityManager manager = connectivityManager();
+            if (manager != null) manager.unregisterNetworkCallback(mCallback);
+        }
+        mCallback = null;
+    }
+
+    @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+    private void registerCallback(ConnectivityManager manager) {
+        mCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                onSignal();
+            }
+
+            @Override
+            public void onLost(Network network) {
+                onSignal();
+            }
+
+            @Override
+            public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+                onSignal();
+            }
+        };
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            manager.registerDefaultNetworkCallback(mCallback);
+        } else {
+            NetworkRequest request = new NetworkRequest.Builder()
+                    .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                    .build();
+            manager.registerNetworkCallback(request, mCallback);
+        }
+    }
+
+    // 系统回调可能在任意线程，统一切到主线程防抖
+    private void onSignal() {
+        mHandler.removeCallbacks(mEvaluate);
+        mHandler.postDelayed(mEvaluate, DEBOUNCE);
+    }
+
+    private void evaluate() {
+        ConnectivityManager manager = connectivityManager();
+        if (manager == null) return;
+        String identity = identity(manager);
+        if (identity.equals(mIdentity)) return;
+        Log.i(TAG, "network " + mIdentity + " -> " + identity);
+        mIdentity = identity;
+        mListener.onNetworkChanged(NetworkUtils.getNetworkType());
+    }
+
+    /**
+     * 网络身份：类型 + 具体网络。API 23+ 用 Network（netId），否则用 NetworkInfo 的附加信息（SSID / APN）；
+     * 不包含移动网络的子类型，4G / 3G 之间切换不算换网络
+     */
+    private static String identity(ConnectivityManager manager) {
+        NetworkInfo info = manager.getActiveNetworkInfo();
+        if (info == null || !info.isAvailable()) return NetworkUtils.NO_NET;
+        String network;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            network = String.valueOf(manager.getActiveNetwork());
+        } else {
+            network = String.valueOf(info.getExtraInfo());
+        }
+        return info.getType() + ":" + network;
+    }
+
+    private ConnectivityManager connectivityManager() {
+        return (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+}
@@ -0,0 +1,85 @@
+package com.tbj.call;
+
+import com.tbj.call.ws.WsHistogram;
+import com.tbj.call.ws.WsStatusListener;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okio.ByteString;
+
+/**
+ * 压测模式的客户端消费者：统计 LoadGenerator 下发消息的吞吐和端到端延迟（微秒）
+ *
+ * 延迟包含 OkHttp 读线程、WsManager 的分发和合并，和业务监听实际看到的一致；不是压测消息的直接忽略
+ */
+public class LoadConsumer extends WsStatusListener {
+
+    private final WsHistogram mLatency = new WsHistogram();
+    private final WsHistogram mSizes = new WsHistogram();
+    private final AtomicLong mMessages = new AtomicLong();
+    private final AtomicLong mBytes = new AtomicLong();
+    private final AtomicLong mReconnects = new AtomicLong();
+
+    private long mLastReportNanos = System.nanoTime();
+    private long mLastMessages;
+    private long mLastBytes;
+
+    @Override
+    public void onMessage(String text) {
+        if (!text.startsWith(LoadGenerator.TEXT_PREFIX)) return;
+        int seqEnd = text.indexOf(':', LoadGenerator.TEXT_PREFIX.length());
+        if (seqEnd < 0) return;
+        long sentAt = 0;
+        for (int i = seqEnd + 1, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            if (c == ':') break;
+            sentAt = sentAt * 10 + (c - '0');
+        }
+        record(sentAt, text.length());
+    }
+
+    @Override
+    public void onMessage(ByteString bytes) {
+        if (bytes.size() < 17 || bytes.getByte(0) != LoadGenerator.BINARY_MAGIC) return;
+        long sentAt = 0;
+        for (int i = 9; i < 17; i++) {
+            sentAt = sentAt << 8 | (bytes.getByte(i) & 0xff);
+        }
+        record(sentAt, bytes.size());
+    }
+
+    @Override
+    public void onReconnect() {
+        mReconnects.incrementAndGet();
+    }
+
+    private void record(long sentAt, int size) {
+        mLatency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sentAt));
+        mSizes.record(size);
+        mMessages.incrementAndGet();
+        mBytes.addAndGet(size);
+    }
+
+    /**
+     * 距上次 report 的吞吐，以及累计的延迟分布；定时在同一个线程调用
+     */
+    public String report() {
+        long now = System.nanoTime();
+        long messages = mMessages.get();
+        long bytes = mBytes.get();
+        double seconds = Math.max(1, now - mLastReportNanos) / 1e9;
+        String report = String.format("load %.0f msg/s %.2f MB/s, total %d, reconnects %d, latency(us) %s, size %s",
+                (messages - mLastMessages) / seconds, (bytes - mLastBytes) / seconds / (1024 * 1024),
+                messages, mReconnects.get(), mLatency, mSizes);
+        mLastReportNanos = now;
+        mLastMessages = messages;
+        mLastBytes = bytes;
+        return report;
+    }
+
+    public void reset() {
+        mLatency.reset();
+        mSizes.reset();
+    }
+}
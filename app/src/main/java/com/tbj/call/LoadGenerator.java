@@ -0,0 +1,138 @@
+package com.tbj.call;
+
+import android.util.Log;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import okhttp3.WebSocket;
+import okio.Buffer;
+
+/**
+ * 压测模式下 mock 服务端的下发线程，按 LoadProfile 给一个服务端 WebSocket 发消息
+ *
+ * 每条消息都带发送时刻的 System.nanoTime()，服务端和客户端在同一进程，LoadConsumer 可以直接算出端到端延迟：
+ *
+ *   文本：  load:<seq>:<nanoTime>:<填充>
+ *   二进制：| 'L'(1) | seq(8) | nanoTime(8) | 填充 |
+ *
+ * 按 1ms 的粒度补齐到目标速率，调度被耽误时一次补发；OkHttp 的发送队列超过 MAX_QUEUE 时跳过并记为丢弃，
+ * 避免超过 16M 被 OkHttp 直接关闭
+ */
+final class LoadGenerator {
+
+    private static final String TAG = "MockWebSocket";
+
+    static final String TEXT_PREFIX = "load:";
+    static final byte BINARY_MAGIC = 'L';
+    static final int HEADER_SIZE = 48; // 文本头最长 46 个字符
+
+    private static final long MAX_QUEUE = 4 * 1024 * 1024;
+    private static final long PACING = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final LoadProfile mProfile;
+    private final Random mRandom = new Random();
+    private final StringBuilder mText = new StringBuilder();
+    private final Buffer mBuffer = new Buffer();
+    private final byte[] mPadding;
+    private volatile boolean mRunning;
+    private Thread mThread;
+
+    private long mSeq;
+    private volatile long mSent;
+    private volatile long mDropped;
+
+    LoadGenerator(LoadProfile profile) {
+        mProfile = profile;
+        mPadding = new byte[profile.mMaxSize];
+        for (int i = 0; i < mPadding.length; i++) {
+            mPadding[i] = (byte) ('a' + i % 26);
+        }
+    }
+
+    void start(WebSocket webSocket) {
+        mRunning = true;
+        mThread = new Thread(() -> run(webSocket), "mock-load");
+        mThread.start();
+    }
+
+    void stop() {
+        mRunning = false;
+        if (mThread != null) LockSupport.unpark(mThread);
+    }
+
+    long getSent() {
+        return mSent;
+    }
+
+    long getDropped() {
+        return mDropped;
+    }
+
+    private void run(WebSocket webSocket) {
+        Log.i(TAG, "server load start " + mProfile);
+        long start = System.nanoTime();
+        long closeAt = mProfile.mCloseInterval > 0 ? start + TimeUnit.MILLISECONDS.toNanos(mProfile.mCloseInterval) : Long.MAX_VALUE;
+        long failAt = mProfile.mFailInterval > 0 ? start + TimeUnit.MILLISECONDS.toNanos(mProfile.mFailInterval) : Long.MAX_VALUE;
+        long burstInterval = TimeUnit.MILLISECONDS.toNanos(mProfile.mBurstInterval);
+        long nextBurst = mProfile.mBurstSize > 0 && burstInterval > 0 ? start + burstInterval : Long.MAX_VALUE;
+        long paced = 0;
+        while (mRunning) {
+            long now = System.nanoTime();
+            if (now >= failAt) {
+                Log.i(TAG, "server load fail connection");
+                webSocket.cancel();
+                break;
+            }
+            if (now >= closeAt) {
+                Log.i(TAG, "server load close connection");
+                webSocket.close(1001, "load close");
+                break;
+            }
+            long due = (now - start) * mProfile.mRate / TimeUnit.SECONDS.toNanos(1) - paced;
+            for (long i = 0; i < due; i++) {
+                sendOne(webSocket);
+            }
+            paced += due;
+            if (now >= nextBurst) {
+                for (int i = 0; i < mProfile.mBurstSize; i++) {
+                    sendOne(webSocket);
+                }
+                nextBurst += burstInterval;
+            }
+            LockSupport.parkNanos(PACING);
+        }
+        mRunning = false;
+        Log.i(TAG, "server load stop, sent " + mSent + " dropped " + mDropped);
+    }
+
+    private void sendOne(WebSocket webSocket) {
+        if (webSocket.queueSize() > MAX_QUEUE) {
+            mDropped++;
+            return;
+        }
+        long seq = ++mSeq;
+        int size = mProfile.nextSize(mRandom);
+        boolean sent;
+        if (mRandom.nextDouble() < mProfile.mBinaryRatio) {
+            mBuffer.writeByte(BINARY_MAGIC);
+            mBuffer.writeLong(seq);
+            mBuffer.writeLong(System.nanoTime());
+            mBuffer.write(mPadding, 0, Math.max(0, size - 17));
+            sent = webSocket.send(mBuffer.readByteString());
+        } else {
+            mText.setLength(0);
+            mText.append(TEXT_PREFIX).append(seq).append(':').append(System.nanoTime()).append(':');
+            for (int i = mText.length(); i < size; i++) {
+                mText.append((char) mPadding[i]);
+            }
+            sent = webSocket.send(mText.toString());
+        }
+        if (sent) {
+            mSent++;
+        } else {
+            mDropped++;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.tbj.call;
+
+import java.util.Random;
+
+/**
+ * MockService 压测模式的参数：下发速率、消息大小分布、文本/二进制比例、突发、定时关闭和断开
+ */
+public final class LoadProfile {
+
+    /** 消息大小在 [min, max] 之间均匀分布 */
+    public static final int SIZE_UNIFORM = 0;
+    /** 指数分布，均值为 (min + max) / 2，截断在 [min, max]；大部分消息小、偶尔有大消息 */
+    public static final int SIZE_EXPONENTIAL = 1;
+
+    final int mRate;
+    final int mMinSize;
+    final int mMaxSize;
+    final int mSizeDistribution;
+    final double mBinaryRatio;
+    final int mBurstSize;
+    final long mBurstInterval;
+    final long mCloseInterval;
+    final long mFailInterval;
+
+    private LoadProfile(Builder builder) {
+        mRate = builder.mRate;
+        mMinSize = builder.mMinSize;
+        mMaxSize = Math.max(builder.mMinSize, builder.mMaxSize);
+        mSizeDistribution = builder.mSizeDistribution;
+        mBinaryRatio = builder.mBinaryRatio;
+        mBurstSize = builder.mBurstSize;
+        mBurstInterval = builder.mBurstInterval;
+        mCloseInterval = builder.mCloseInterval;
+        mFailInterval = builder.mFailInterval;
+    }
+
+    int nextSize(Random random) {
+        if (mMinSize == mMaxSize) return mMinSize;
+        if (mSizeDistribution == SIZE_EXPONENTIAL) {
+            double mean = (mMinSize + mMaxSize) / 2.0;
+            int size = (int) (-mean * Math.log(1 - random.nextDouble()));
+            return Math.max(mMinSize, Math.min(mMaxSize, size));
+        }
+        return mMinSize + random.nextInt(mMaxSize - mMinSize + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "LoadProfile{rate " + mRate + "/s, size " + mMinSize + "~" + mMaxSize
+                + ", binary " + mBinaryRatio + ", burst " + mBurstSize + "/" + mBurstInterval + "ms"
+                + ", close " + mCloseInterval + "ms, fail " + mFailInterval + "ms}";
+    }
+
+    public static final class Builder {
+
+        private int mRate = 1000;
+        private int mMinSize = 64;
+        private int mMaxSize = 1024;
+        private int mSizeDistribution = SIZE_UNIFORM;
+        private double mBinaryRatio = 0.5;
+        private int mBurstSize;
+        private long mBurstInterval;
+        private long mCloseInterval;
+        private long mFailInterval;
+
+        /** 每秒下发多少条，可以到几万 */
+        public Builder rate(int messagesPerSecond) {
+            mRate = messagesPerSecond;
+            return this;
+        }
+
+        /** 消息大小（字节），distribution 取 SIZE_UNIFORM / SIZE_EXPONENTIAL */
+        public Builder payloadSize(int min, int max, int distribution) {
+            mMinSize = Math.max(LoadGenerator.HEADER_SIZE, min);
+            mMaxSize = max;
+            mSizeDistribution = distribution;
+            return this;
+        }
+
+        /** 二进制消息的比例，0 ~ 1 */
+        public Builder binaryRatio(double ratio) {
+            mBinaryRatio = Math.max(0, Math.min(1, ratio));
+            return this;
+        }
+
+        /** 每隔 interval 毫秒在正常速率之外一次性多发 size 条 */
+        public Builder burst(int size, long interval) {
+            mBurstSize = size;
+            mBurstInterval = interval;
+            return this;
+        }
+
+        /** 连接建立 interval 毫秒后服务端主动 close（1001），0 表示不关闭 */
+        public Builder closeEvery(long interval) {
+            mCloseInterval = interval;
+            return this;
+        }
+
+        /** 连接建立 interval 毫秒后服务端直接断开（不走 close 握手），0 表示不断开 */
+        public Builder failEvery(long interval) {
+            mFailInterval = interval;
+            return this;
+        }
+
+        public LoadProfile build() {
+            return new LoadProfile(this);
+        }
+    }
+}
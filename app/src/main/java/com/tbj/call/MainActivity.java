@@ -45,6 +45,20 @@ public class MainActivity extends AppCompatActivity {
         findViewById(R.id.btn_stop_service).setOnClickListener(v -> {
             if(mMockInterface != null) mMockInterface.stopService();
         });
+        findViewById(R.id.btn_start_load).setOnClickListener(v -> {
+            if(mMockInterface == null) return;
+            // 2 万条/秒，大小指数分布，一半二进制，每秒突发 2000 条，30 秒服务端主动关闭一次
+            mMockInterface.startLoad(new LoadProfile.Builder()
+                    .rate(20000)
+                    .payloadSize(64, 4096, LoadProfile.SIZE_EXPONENTIAL)
+                    .binaryRatio(0.5)
+                    .burst(2000, 1000)
+                    .closeEvery(30 * 1000)
+                    .build());
+        });
+        findViewById(R.id.btn_stop_load).setOnClickListener(v -> {
+            if(mMockInterface != null) mMockInterface.stopLoad();
+        });
 //        findViewById(R.id.btn_conn).setOnClickListener(v -> connection());
     }
 
@@ -10,18 +10,22 @@ import android.support.annotation.Nullable;
 import android.support.annotation.StringRes;
 import android.util.Log;
 
+import com.tbj.call.ws.WsClients;
 import com.tbj.call.ws.WsManager;
-import com.tbj.call.ws.WsStatusListener;
+import com.tbj.call.ws.WsTracer;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Random;
 import java.util.concurrent.Executors;
 
-import okhttp3.OkHttpClient;
 import okhttp3.Response;
 import okhttp3.WebSocket;
 import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.Dispatcher;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
 import okio.ByteString;
 
 /**
@@ -45,16 +49,31 @@ public class MockService extends Service {
     private Handler mHandler = new Handler(Looper.myLooper());
     private Runnable mRunnable;
 
+    // 压测模式
+    private static final long LOAD_REPORT_INTERVAL = 5000;
+    private static final long METRICS_DUMP_INTERVAL = 30 * 1000;
+    private static final String TRACE_FILE = "ws-trace.bin";
+    private volatile LoadProfile mLoadProfile;
+    private volatile LoadGenerator mLoadGenerator;
+    private final LoadConsumer mLoadConsumer = new LoadConsumer();
+    private final Runnable mLoadReport = new Runnable() {
+        @Override
+        public void run() {
+            Log.i(TAG, mLoadConsumer.report());
+            mHandler.postDelayed(this, LOAD_REPORT_INTERVAL);
+        }
+    };
+
     private void clientConnection(){
         if(mWsManager == null) {
-            OkHttpClient client = new OkHttpClient.Builder()
-//                    .retryOnConnectionFailure(true)
-                    .build();
-            WsStatusListener listener = new WsStatusListener() {};
+            // 非压测消息 LoadConsumer 直接忽略
             mWsManager = new WsManager.Builder(this)
                     .url(mWebSocketUrl)
-                    .client(client)
-                    .listener(listener)
+                    .client(WsClients.get())
+                    .listener(mLoadConsumer)
+                    // mServerListener 会回 pong
+                    .heartbeat()
+                    .metricsDump(METRICS_DUMP_INTERVAL)
                     .build();
         }
         mWsManager.startConnect();
@@ -64,41 +83,125 @@ public class MockService extends Service {
         Executors.newSingleThreadExecutor().execute(() -> {
             if(mMockWebServer == null){
                 mMockWebServer = new MockWebServer();
+                // 每次握手（包括客户端重连）都升级成 WebSocket，不用逐个 enqueue
+                mMockWebServer.setDispatcher(new Dispatcher() {
+                    @Override
+                    public MockResponse dispatch(RecordedRequest request) {
+                        return new MockResponse().withWebSocketUpgrade(mServerListener);
+                    }
+                });
                 String hostName = mMockWebServer.getHostName();
                 int port = mMockWebServer.getPort();
                 String url = "ws://" + hostName + ":" + port + "/";
                 Log.i(TAG, "mock websocket url:" + url);
                 setWebSocketUrl(url);
+                // 地址到这里才确定，DNS 解析和连接池预热与下面的建连并行
+                WsClients.warmUp(url);
             }
             Log.i(TAG, "newWebSocket");
             clientConnection();
-            mMockWebServer.enqueue(new MockResponse().withWebSocketUpgrade(new WebSocketListener() {
-                @Override
-                public void onOpen(WebSocket webSocket, Response response) {
-                    Log.i(TAG, "server onOpen");
-                    mWebSocket = webSocket;
-                    sendMsg();
-                }
-
-                @Override
-                public void onClosing(WebSocket webSocket, int code, String reason) {
-                    Log.i(TAG, "server onClosing code:" + code + " reason:" + reason);
-                    mHandler.removeCallbacks(mRunnable);
-                    // TODO 客户端请求关闭，就不能再用了，需要新的连接
-                }
-
-                @Override
-                public void onClosed(WebSocket webSocket, int code, String reason) {
-                    Log.i(TAG, "server onClosed code:" + code + " reason:" + reason);
-                }
-                @Override
-                public void onFailure(WebSocket webSocket, Throwable t, Response response) {
-                    Log.i(TAG, "server onFailure response:" + response);
-                }
-            }));
         });
     }
 
+    private final WebSocketListener mServerListener = new WebSocketListener() {
+        @Override
+        public void onOpen(WebSocket webSocket, Response response) {
+            Log.i(TAG, "server onOpen");
+            mWebSocket = webSocket;
+            LoadProfile profile = mLoadProfile;
+            if (profile != null) {
+                startLoadGenerator(webSocket, profile);
+            } else {
+                sendMsg();
+            }
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            // 客户端应用层心跳
+            if (text.startsWith("ping:")) {
+                webSocket.send("pong:" + text.substring("ping:".length()));
+            }
+        }
+
+        @Override
+        public void onClosing(WebSocket webSocket, int code, String reason) {
+            Log.i(TAG, "server onClosing code:" + code + " reason:" + reason);
+            mHandler.removeCallbacks(mRunnable);
+            // 客户端重连时新连接可能先 onOpen，旧连接的回调不能停掉新连接上的压测
+            if (webSocket == mWebSocket) stopLoadGenerator();
+            // TODO 客户端请求关闭，就不能再用了，需要新的连接
+        }
+
+        @Override
+        public void onClosed(WebSocket webSocket, int code, String reason) {
+            Log.i(TAG, "server onClosed code:" + code + " reason:" + reason);
+        }
+        @Override
+        public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+            Log.i(TAG, "server onFailure response:" + response);
+            if (webSocket == mWebSocket) stopLoadGenerator();
+        }
+    };
+
+    /**
+     * 压测模式：服务端按 profile 持续下发，客户端由 LoadConsumer 统计吞吐和延迟，每 5 秒打一次日志
+     */
+    private void startLoad(LoadProfile profile) {
+        mLoadProfile = profile;
+        // 压测期间逐条记录收发事件，停止时导出
+        WsTracer.setLevel(WsTracer.LEVEL_DEBUG);
+        mLoadConsumer.reset();
+        mHandler.removeCallbacks(mLoadReport);
+        mHandler.postDelayed(mLoadReport, LOAD_REPORT_INTERVAL);
+        WebSocket webSocket = mWebSocket;
+        if (webSocket != null) {
+            // 已经连上了，停掉普通模式的定时消息，直接在当前连接上开始
+            mHandler.removeCallbacks(mRunnable);
+            startLoadGenerator(webSocket, profile);
+        } else {
+            startService();
+        }
+    }
+
+    private void stopLoad() {
+        mLoadProfile = null;
+        stopLoadGenerator();
+        mHandler.removeCallbacks(mLoadReport);
+        Log.i(TAG, mLoadConsumer.report());
+        if (WsTracer.getLevel() == WsTracer.LEVEL_DEBUG) {
+            WsTracer.setLevel(WsTracer.LEVEL_INFO);
+            dumpTrace();
+        }
+    }
+
+    // 导出到 files/ws-trace.bin，adb pull 之后用 ./gradlew :benchmark:decodeTrace 解码
+    private void dumpTrace() {
+        File file = new File(getFilesDir(), TRACE_FILE);
+        new Thread(() -> {
+            try {
+                Log.i(TAG, "trace dumped " + WsTracer.dump(file) + " events to " + file);
+            } catch (IOException e) {
+                Log.w(TAG, "trace dump failed", e);
+            }
+        }, "ws-trace-dump").start();
+    }
+
+    private void startLoadGenerator(WebSocket webSocket, LoadProfile profile) {
+        stopLoadGenerator();
+        LoadGenerator generator = new LoadGenerator(profile);
+        mLoadGenerator = generator;
+        generator.start(webSocket);
+    }
+
+    private void stopLoadGenerator() {
+        LoadGenerator generator = mLoadGenerator;
+        if (generator != null) {
+            generator.stop();
+            mLoadGenerator = null;
+        }
+    }
+
     private void sendMsg() {
         sendMsg(mReSendCount);
     }
@@ -111,7 +214,7 @@ public class MockService extends Service {
             public void run() {
                 Random random = new Random();
                 int integer = random.nextInt(max)%(max-min+1) + min;
-                Log.i(TAG, "service send msg " + integer);
+                WsTracer.trace(WsTracer.LEVEL_DEBUG, WsTracer.EVENT_SERVER_SEND, 0, integer);
                 mWebSocket.send("" + integer);
                 mHandler.postDelayed(this, 2000);
             }
@@ -136,6 +239,13 @@ public class MockService extends Service {
         return mWebSocketUrl;
     }
 
+    @Override
+    public void onDestroy() {
+        stopLoad();
+        if (mWsManager != null) mWsManager.release();
+        super.onDestroy();
+    }
+
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
@@ -146,6 +256,8 @@ public class MockService extends Service {
         void startService();
         void stopService();
         String getWebSocketUrl();
+        void startLoad(LoadProfile profile);
+        void stopLoad();
     }
 
     class MockBinder extends Binder implements MockInterface {
@@ -166,5 +278,15 @@ public class MockService extends Service {
         public String getWebSocketUrl() {
             return mMockService.getWebSocketUrl();
         }
+
+        @Override
+        public void startLoad(LoadProfile profile) {
+            mMockService.startLoad(profile);
+        }
+
+        @Override
+        public void stopLoad() {
+            mMockService.stopLoad();
+        }
     }
 }
@@ -1,48 +1,32 @@
 package com.tbj.call;
 
 import android.app.Service;
-import android.content.BroadcastReceiver;
-import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
-import android.net.ConnectivityManager;
 import android.os.IBinder;
+import android.widget.Toast;
 
-import com.tbj.call.ws.WsManager;
-
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import com.tbj.call.ws.WsRegistry;
 
 public class NetworkStateService extends Service {
 
     private static final String TAG = NetworkStateService.class.getSimpleName();
-    
-    private BroadcastReceiver mReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            // 接收 ConnectivityManager.CONNECTIVITY_ACTION 的系统广播
-            if(intent == null) return;
-            String action = intent.getAction();
-            if (!ConnectivityManager.CONNECTIVITY_ACTION.equals(action)) return;
-
-            String networkType = NetworkUtils.getNetworkType();
-            HashMap<String, WsManager> wsMap = App.getWsMap();
-            Set<Map.Entry<String, WsManager>> entries = wsMap.entrySet();
-            for (Map.Entry<String, WsManager> entry : entries) {
-                WsManager wsManager = entry.getValue();
-                WsManager.OnNetworkStateChangedListener networkListener = wsManager.getNetworkListener();
-                networkListener.onNetStateChanged(networkType);
-            }
+
+    // 防抖、去重之后的网络变化，在主线程回调
+    private final ConnectivityMonitor.Listener mListener = networkType -> {
+        if (NetworkUtils.NO_NET.equals(networkType)) {
+            Toast.makeText(this, R.string.error_no_net, Toast.LENGTH_SHORT).show();
         }
+        // 并行分发给所有连接，不在主线程上逐个处理
+        WsRegistry.dispatchNetworkChange(networkType);
     };
 
+    private ConnectivityMonitor mMonitor;
+
     @Override
     public void onCreate() {
-        IntentFilter filter = new IntentFilter();
-        filter.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
-        registerReceiver(mReceiver, filter);
         super.onCreate();
+        mMonitor = new ConnectivityMonitor(this, mListener);
+        mMonitor.start();
     }
 
     @Override
@@ -52,7 +36,7 @@ public class NetworkStateService extends Service {
 
     @Override
     public void onDestroy() {
-        unregisterReceiver(mReceiver);
+        mMonitor.stop();
         super.onDestroy();
     }
 
@@ -0,0 +1,82 @@
+package com.tbj.call.ws;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 有界无锁队列：多生产者（任意线程 offer）单消费者（发送线程 poll）
+ *
+ * 基于环形数组 + 每个槽位的序号，入队只需一次 CAS，队满直接返回 false，不会阻塞调用方，也不会为每个元素分配节点
+ */
+final class BoundedMpscQueue<E> {
+
+    private final int mMask;
+    private final AtomicReferenceArray<E> mBuffer;
+    private final AtomicLongArray mSequences;
+    private final AtomicLong mProducerIndex = new AtomicLong();
+    private final AtomicLong mConsumerIndex = new AtomicLong();
+
+    BoundedMpscQueue(int capacity) {
+        int size = 1;
+        while (size < capacity) size <<= 1;
+        mMask = size - 1;
+        mBuffer = new AtomicReferenceArray<>(size);
+        mSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            mSequences.set(i, i);
+        }
+    }
+
+    int capacity() {
+        return mMask + 1;
+    }
+
+    boolean offer(E e) {
+        if (e == null) throw new NullPointerException();
+        while (true) {
+            long index = mProducerIndex.get();
+            int slot = (int) index & mMask;
+            long diff = mSequences.get(slot) - index;
+            if (diff == 0) {
+                if (mProducerIndex.compareAndSet(index, index + 1)) {
+                    mBuffer.lazySet(slot, e);
+                    mSequences.set(slot, index + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                // 消费者还没腾出这个槽位，队满
+                return false;
+            }
+        }
+    }
+
+    /** 只能由单个消费者线程调用 */
+    E poll() {
+        long index = mConsumerIndex.get();
+        int slot = (int) index & mMask;
+        if (mSequences.get(slot) - (index + 1) < 0) return null;
+        E e = mBuffer.get(slot);
+        mBuffer.lazySet(slot, null);
+        mSequences.set(slot, index + mMask + 1);
+        mConsumerIndex.lazySet(index + 1);
+        return e;
+    }
+
+    /** 只能由单个消费者线程调用 */
+    E peek() {
+        long index = mConsumerIndex.get();
+        int slot = (int) index & mMask;
+        if (mSequences.get(slot) - (index + 1) < 0) return null;
+        return mBuffer.get(slot);
+    }
+
+    int size() {
+        long size = mProducerIndex.get() - mConsumerIndex.get();
+        return (int) Math.max(0, Math.min(size, mMask + 1));
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+}
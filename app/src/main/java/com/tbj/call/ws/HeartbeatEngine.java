@@ -0,0 +1,185 @@
+package com.tbj.call.ws;
+
+import com.tbj.call.NetworkUtils;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 应用层心跳，对应重连机制的第 3 种情况：连接已经不通但没有收到 onClosing/onFailure；
+ * 需要服务端配合，通过 WsManager.Builder.heartbeat 开启
+ *
+ * 每隔 interval 发一次 "ping:id"，服务端回 "pong:id"：
+ * - 连续 STABLE_STREAK 次按时收到 pong，间隔放大 1.5 倍（不超过 maxInterval），减少无线电唤醒
+ * - 切换 WIFI/MOBILE 时间隔回到 minInterval，尽快确认新链路
+ * - pongTimeout 内没收到 pong 记一次丢失并立即补发探测，连续丢失 maxMissed 次判定连接已死
+ * 任何入站消息都说明连接还活着，会清零丢失计数
+ */
+final class HeartbeatEngine {
+
+    static final String PING_PREFIX = "ping:";
+    static final String PONG_PREFIX = "pong:";
+
+    static final long DEFAULT_MIN_INTERVAL = 15 * 1000;
+    static final long DEFAULT_MAX_INTERVAL = 4 * 60 * 1000;
+    static final long DEFAULT_PONG_TIMEOUT = 10 * 1000;
+    static final int DEFAULT_MAX_MISSED = 3;
+
+    private static final int STABLE_STREAK = 4;
+
+    interface Callback {
+        /** 直接写出心跳帧，不经过发送队列 */
+        boolean sendPing(String frame);
+
+        void onConnectionDead(int missed);
+
+        /** 收到对应的 pong，rttNanos 是这次的往返时间 */
+        void onRtt(long rttNanos);
+    }
+
+    private final ScheduledExecutorService mScheduler;
+    private final Callback mCallback;
+    private final long mMinInterval;
+    private final long mMaxInterval;
+    private final long mPongTimeout;
+    private final int mMaxMissed;
+    private final RttEstimator mRtt = new RttEstimator();
+
+    private boolean mRunning;
+    private long mInterval;
+    private long mPingId;
+    private long mPingSentAt;    // 未收到 pong 的 ping 发出时间，0 表示没有
+    private int mMissed;
+    private int mStreak;
+    private String mNetworkType;
+    private ScheduledFuture<?> mTask;
+
+    HeartbeatEngine(ScheduledExecutorService scheduler, long minInterval, long maxInterval,
+                    long pongTimeout, int maxMissed, Callback callback) {
+        mScheduler = scheduler;
+        mMinInterval = minInterval;
+        mMaxInterval = Math.max(minInterval, maxInterval);
+        mPongTimeout = Math.min(pongTimeout, minInterval);
+        mMaxMissed = Math.max(1, maxMissed);
+        mCallback = callback;
+        mInterval = minInterval;
+    }
+
+    /** onOpen 时调用 */
+    synchronized void start() {
+        mRunning = true;
+        mMissed = 0;
+        mStreak = 0;
+        mPingSentAt = 0;
+        scheduleTick(mInterval);
+    }
+
+    /** 连接断开时调用 */
+    synchronized void stop() {
+        mRunning = false;
+        mPingSentAt = 0;
+        cancelTask();
+    }
+
+    /**
+     * 处理入站文本帧
+     * @return true 表示是 pong，已被心跳消费，不需要再分发给业务
+     */
+    boolean onMessage(String text) {
+        if (!text.startsWith(PONG_PREFIX)) {
+            markAlive();
+            return false;
+        }
+        long id;
+        try {
+            id = Long.parseLong(text.substring(PONG_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return true;
+        }
+        onPong(id);
+        return true;
+    }
+
+    synchronized void markAlive() {
+        mMissed = 0;
+    }
+
+    private synchronized void onPong(long id) {
+        if (!mRunning || id != mPingId || mPingSentAt == 0) return;
+        long rtt = System.nanoTime() - mPingSentAt;
+        mRtt.add(TimeUnit.NANOSECONDS.toMillis(rtt));
+        mCallback.onRtt(rtt);
+        mPingSentAt = 0;
+        mMissed = 0;
+        if (++mStreak >= STABLE_STREAK) {
+            mStreak = 0;
+            mInterval = Math.min(mMaxInterval, mInterval * 3 / 2);
+        }
+        scheduleTick(mInterval);
+    }
+
+    /**
+     * 网络类型变化（NetworkUtils.getNetworkType()）时缩短间隔并尽快探测一次
+     */
+    synchronized void onNetworkChanged(String type) {
+        if (type.equals(mNetworkType)) return;
+        mNetworkType = type;
+        mInterval = mMinInterval;
+        mStreak = 0;
+        if (mRunning && !NetworkUtils.NO_NET.equals(type)) scheduleTick(0);
+    }
+
+    long getRttMillis(double percentile) {
+        return mRtt.percentile(percentile);
+    }
+
+    long getLastRttMillis() {
+        return mRtt.last();
+    }
+
+    synchronized long getInterval() {
+        return mInterval;
+    }
+
+    private void tick() {
+        long id;
+        synchronized (this) {
+            if (!mRunning) return;
+            id = ++mPingId;
+            mPingSentAt = System.nanoTime();
+            cancelTask();
+            mTask = mScheduler.schedule(this::onPongTimeout, mPongTimeout, TimeUnit.MILLISECONDS);
+        }
+        mCallback.sendPing(PING_PREFIX + id);
+    }
+
+    private void onPongTimeout() {
+        int missed;
+        synchronized (this) {
+            if (!mRunning || mPingSentAt == 0) return;
+            missed = ++mMissed;
+            mStreak = 0;
+            mInterval = mMinInterval;
+            if (missed < mMaxMissed) {
+                scheduleTick(0);
+                return;
+            }
+            mRunning = false;
+            mPingSentAt = 0;
+        }
+        mCallback.onConnectionDead(missed);
+    }
+
+    private void scheduleTick(long delay) {
+        cancelTask();
+        mTask = mScheduler.schedule(this::tick, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelTask() {
+        if (mTask != null) {
+            mTask.cancel(false);
+            mTask = null;
+        }
+    }
+}
@@ -12,9 +12,10 @@ interface IWsManager {
   boolean isConnected();
 
   int getCurrentStatus();
-  void setCurrentStatus(int currentStatus);
+  boolean compareAndSetStatus(int expect, int update); // 只允许 WsStateMachine 里合法的迁移
 
   boolean sendMessage(String msg);
   boolean sendMessage(ByteString byteString); // ByteString 代表一个不可变的字节数组 byte[] data
+  boolean sendMessage(int type, ByteString payload); // 按 WsFrameCodec 编码的带类型消息
 
 }
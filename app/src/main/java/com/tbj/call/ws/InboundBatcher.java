@@ -0,0 +1,90 @@
+package com.tbj.call.ws;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 入站文本帧合并投递：在 window 毫秒或攒满 maxCount 条后，一次性回调 WsStatusListener.onMessages
+ *
+ * 配置了 MessageKeySelector 时为 latest-wins 模式：同一个 key 在一个窗口内只保留最新的一条，
+ * 适合只关心最新值的状态类消息
+ *
+ * 攒好的一批交给 Sink 进 WsInbound，和单条消息一样受容量、溢出策略和额度约束，也和生命周期回调一起排队
+ */
+final class InboundBatcher {
+
+    interface Sink {
+        /** 在 flush 的锁内调用，窗口之间保持顺序 */
+        void onBatch(List<String> texts, long receivedNanos);
+    }
+
+    private final ScheduledExecutorService mScheduler;
+    private final long mWindow;
+    private final int mMaxCount;
+    private final WsManager.MessageKeySelector mKeySelector;
+    private final Sink mSink;
+
+    private List<String> mPending;
+    private LinkedHashMap<Object, String> mLatest;
+    private ScheduledFuture<?> mFlushTask;
+    private long mFirstReceived; // 窗口里第一条的收到时刻
+
+    private final Runnable mFlushRunnable = this::flush;
+
+    InboundBatcher(ScheduledExecutorService scheduler, long window, int maxCount,
+                   WsManager.MessageKeySelector keySelector, Sink sink) {
+        mScheduler = scheduler;
+        mWindow = window;
+        mMaxCount = Math.max(1, maxCount);
+        mKeySelector = keySelector;
+        mSink = sink;
+    }
+
+    synchronized void add(String text, long receivedNanos) {
+        if (isEmpty()) mFirstReceived = receivedNanos;
+        int size;
+        if (mKeySelector != null) {
+            if (mLatest == null) mLatest = new LinkedHashMap<>();
+            mLatest.put(mKeySelector.keyOf(text), text);
+            size = mLatest.size();
+        } else {
+            if (mPending == null) mPending = new ArrayList<>(Math.min(mMaxCount, 64));
+            mPending.add(text);
+            size = mPending.size();
+        }
+        if (size >= mMaxCount) {
+            flush();
+        } else if (mFlushTask == null) {
+            mFlushTask = mScheduler.schedule(mFlushRunnable, mWindow, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private boolean isEmpty() {
+        return (mLatest == null || mLatest.isEmpty()) && (mPending == null || mPending.isEmpty());
+    }
+
+    /**
+     * 立即把当前窗口交给 Sink，连接关闭时在关闭回调入队之前调用，保证这些消息排在关闭回调前面
+     */
+    synchronized void flush() {
+        if (mFlushTask != null) {
+            mFlushTask.cancel(false);
+            mFlushTask = null;
+        }
+        List<String> batch;
+        if (mLatest != null && !mLatest.isEmpty()) {
+            batch = new ArrayList<>(mLatest.values());
+            mLatest.clear();
+        } else if (mPending != null && !mPending.isEmpty()) {
+            batch = mPending;
+            mPending = null;
+        } else {
+            return;
+        }
+        mSink.onBatch(batch, mFirstReceived);
+    }
+}
@@ -0,0 +1,131 @@
+package com.tbj.call.ws;
+
+import java.util.Arrays;
+
+/**
+ * long 为 key 的开放寻址哈希表：线性探测，删除时后移，不需要墓碑
+ *
+ * key 不装箱、没有 Entry 对象，几千个在途消息也只有两个数组；不是线程安全的，由调用方加锁
+ */
+final class LongObjectMap<V> {
+
+    private static final long EMPTY = 0; // key 不能为 0
+
+    private long[] mKeys;
+    private Object[] mValues;
+    private int mMask;
+    private int mSize;
+
+    LongObjectMap(int expectedSize) {
+        int capacity = 4;
+        while (capacity < expectedSize * 2) capacity <<= 1;
+        allocate(capacity);
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        int slot = find(key);
+        return slot < 0 ? null : (V) mValues[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        if (key == EMPTY) throw new IllegalArgumentException("key 0 is reserved");
+        int slot = hash(key) & mMask;
+        while (mKeys[slot] != EMPTY) {
+            if (mKeys[slot] == key) {
+                V previous = (V) mValues[slot];
+                mValues[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        mKeys[slot] = key;
+        mValues[slot] = value;
+        // 负载因子 0.5，探测链保持很短
+        if (++mSize * 2 > mKeys.length) resize(mKeys.length * 2);
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        int slot = find(key);
+        if (slot < 0) return null;
+        V value = (V) mValues[slot];
+        mSize--;
+        // 把后面同一探测链上的元素往前挪，填上空位
+        int hole = slot;
+        int next = (hole + 1) & mMask;
+        while (mKeys[next] != EMPTY) {
+            int home = hash(mKeys[next]) & mMask;
+            if (((next - home) & mMask) >= ((next - hole) & mMask)) {
+                mKeys[hole] = mKeys[next];
+                mValues[hole] = mValues[next];
+                hole = next;
+            }
+            next = (next + 1) & mMask;
+        }
+        mKeys[hole] = EMPTY;
+        mValues[hole] = null;
+        return value;
+    }
+
+    void clear() {
+        Arrays.fill(mKeys, EMPTY);
+        Arrays.fill(mValues, null);
+        mSize = 0;
+    }
+
+    /** 按槽位遍历，visitor 里不能修改这个表 */
+    @SuppressWarnings("unchecked")
+    void forEach(Visitor<V> visitor) {
+        long[] keys = mKeys;
+        Object[] values = mValues;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) visitor.visit(keys[i], (V) values[i]);
+        }
+    }
+
+    interface Visitor<V> {
+        void visit(long key, V value);
+    }
+
+    private int find(long key) {
+        if (key == EMPTY) return -1;
+        int slot = hash(key) & mMask;
+        while (mKeys[slot] != EMPTY) {
+            if (mKeys[slot] == key) return slot;
+            slot = (slot + 1) & mMask;
+        }
+        return -1;
+    }
+
+    private void resize(int capacity) {
+        long[] keys = mKeys;
+        Object[] values = mValues;
+        allocate(capacity);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == EMPTY) continue;
+            int slot = hash(keys[i]) & mMask;
+            while (mKeys[slot] != EMPTY) slot = (slot + 1) & mMask;
+            mKeys[slot] = keys[i];
+            mValues[slot] = values[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new long[capacity];
+        mValues = new Object[capacity];
+        mMask = capacity - 1;
+    }
+
+    // 连续的 id 打散到不同槽位
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ h >>> 32);
+    }
+}
@@ -0,0 +1,92 @@
+package com.tbj.call.ws;
+
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 重连调度：带上限的指数退避 + decorrelated jitter
+ *
+ *   delay = min(RECONNECT_MAX_TIME, random(RECONNECT_BASE, lastDelay * 3))
+ *
+ * 服务端重启后大量客户端不会在同一时刻一起重连；同一时间最多只有一个待执行的重连，
+ * onClosing / onClosed / 网络变化等重复触发会被合并
+ */
+final class ReconnectScheduler {
+
+    static final long RECONNECT_BASE = 1000;           // 最小重连间隔 ms
+    static final long RECONNECT_MAX_TIME = 120 * 1000; // 最大重连间隔 ms
+
+    private final ScheduledExecutorService mScheduler;
+    private final Runnable mReconnectAction;
+    private final long mBaseDelay;
+    private final long mMaxDelay;
+    private final Random mRandom = new Random();
+
+    private ScheduledFuture<?> mPending;
+    private long mLastDelay;
+    private int mAttempts;
+
+    ReconnectScheduler(ScheduledExecutorService scheduler, long baseDelay, long maxDelay, Runnable reconnectAction) {
+        mScheduler = scheduler;
+        mBaseDelay = baseDelay;
+        mMaxDelay = Math.max(baseDelay, maxDelay);
+        mReconnectAction = reconnectAction;
+        mLastDelay = baseDelay;
+    }
+
+    /**
+     * 按退避间隔安排一次重连，已有待执行的重连时直接合并
+     * @return 实际安排的延迟，被合并时返回 -1
+     */
+    synchronized long schedule() {
+        if (mPending != null) return -1;
+        long delay = nextDelay();
+        mPending = mScheduler.schedule(this::fire, delay, TimeUnit.MILLISECONDS);
+        return delay;
+    }
+
+    /**
+     * 网络恢复等明确可以连上的场景：重置退避并尽快重连，已有待执行的重连会被提前
+     */
+    synchronized void scheduleNow() {
+        reset();
+        if (mPending != null) mPending.cancel(false);
+        mPending = mScheduler.schedule(this::fire, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /** 连接成功后调用，退避从头开始 */
+    synchronized void reset() {
+        mLastDelay = mBaseDelay;
+        mAttempts = 0;
+    }
+
+    /** 手动断开时取消待执行的重连 */
+    synchronized void cancel() {
+        if (mPending != null) {
+            mPending.cancel(false);
+            mPending = null;
+        }
+        reset();
+    }
+
+    synchronized int getAttempts() {
+        return mAttempts;
+    }
+
+    private long nextDelay() {
+        long upper = Math.min(mMaxDelay, mLastDelay * 3);
+        long delay = mBaseDelay + (long) (mRandom.nextDouble() * (upper - mBaseDelay));
+        mLastDelay = Math.min(mMaxDelay, delay);
+        return mLastDelay;
+    }
+
+    private void fire() {
+        synchronized (this) {
+            mPending = null;
+            mAttempts++;
+        }
+        mReconnectAction.run();
+    }
+}
@@ -0,0 +1,46 @@
+package com.tbj.call.ws;
+
+import java.util.Arrays;
+
+/**
+ * 滑动窗口的 RTT 百分位估算，只保留最近 WINDOW 个样本，不额外分配内存
+ */
+final class RttEstimator {
+
+    private static final int WINDOW = 64;
+
+    private final long[] mSamples = new long[WINDOW];
+    private final long[] mScratch = new long[WINDOW];
+    private int mCount;
+    private int mNext;
+    private long mLast = -1;
+
+    synchronized void add(long rttMillis) {
+        mSamples[mNext] = rttMillis;
+        mNext = (mNext + 1) % WINDOW;
+        if (mCount < WINDOW) mCount++;
+        mLast = rttMillis;
+    }
+
+    /**
+     * @param percentile 0 ~ 100
+     * @return 没有样本时返回 -1
+     */
+    synchronized long percentile(double percentile) {
+        if (mCount == 0) return -1;
+        System.arraycopy(mSamples, 0, mScratch, 0, mCount);
+        Arrays.sort(mScratch, 0, mCount);
+        int index = (int) Math.ceil(percentile / 100 * mCount) - 1;
+        return mScratch[Math.max(0, Math.min(mCount - 1, index))];
+    }
+
+    synchronized long last() {
+        return mLast;
+    }
+
+    synchronized void clear() {
+        mCount = 0;
+        mNext = 0;
+        mLast = -1;
+    }
+}
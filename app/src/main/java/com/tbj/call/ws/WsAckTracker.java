@@ -0,0 +1,163 @@
+package com.tbj.call.ws;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import okio.ByteString;
+
+/**
+ * 可靠发送：至少一次送达，用于呼叫建立这类不能丢的消息
+ *
+ * - 每条消息分配一个 id，编码在帧头（FLAG_ID），服务端收到后回 TYPE_ACK，payload 是若干个 id 的 varint，可以合并确认
+ * - 在途消息放在 LongObjectMap 里，超时由共用的 WsTimerWheel 驱动，几千条在途也只有一个定时任务
+ * - 在途数量达到窗口上限时 send 返回 -1，调用方等 ACKED 回调后再发，形成背压
+ * - 超时没有确认就重发，间隔翻倍；断线期间不重发也不计次数，重连后把已经写出过的在途消息全部重发一遍
+ * - 重发的帧沿用原来的 id，服务端需要按 id 去重
+ *
+ * 可靠消息不进离线发件箱：断线期间由这里保存，重连后重发
+ */
+final class WsAckTracker {
+
+    static final int DEFAULT_WINDOW = 256;
+    static final long DEFAULT_RETRANSMIT_TIMEOUT = 3000; // ms
+    static final int DEFAULT_MAX_ATTEMPTS = 10;
+    private static final long MAX_RETRANSMIT_TIMEOUT = 30 * 1000;
+
+    interface Callback {
+        boolean isConnected();
+
+        /** 放进发送队列 */
+        boolean enqueue(WsFrame frame);
+
+        void onAcked(WsFrame frame);
+
+        /** 重发次数用完仍没有确认 */
+        void onGaveUp(WsFrame frame);
+    }
+
+    private final class InFlight extends WsTimerWheel.Timeout {
+        final WsFrame mFrame;
+        long mTimeout = mRetransmitTimeout;
+        int mAttempts;
+        boolean mQueued; // 已经在发送队列里、还没写出，这时不用重发
+
+        InFlight(WsFrame frame) {
+            mFrame = frame;
+        }
+
+        @Override
+        void onExpired() {
+            WsAckTracker.this.onExpired(this);
+        }
+    }
+
+    private final int mWindow;
+    private final long mRetransmitTimeout;
+    private final int mMaxAttempts;
+    private final WsTimerWheel mWheel;
+    private final Callback mCallback;
+    private final LongObjectMap<InFlight> mInFlight;
+    private int mNextId;
+    private final List<InFlight> mRetransmits = new ArrayList<>(); // 只在持锁时使用
+
+    WsAckTracker(WsTimerWheel wheel, int window, long retransmitTimeout, int maxAttempts, Callback callback) {
+        mWheel = wheel;
+        mWindow = window;
+        mRetransmitTimeout = retransmitTimeout;
+        mMaxAttempts = maxAttempts;
+        mCallback = callback;
+        mInFlight = new LongObjectMap<>(window);
+    }
+
+    /**
+     * @return 消息 id，在途窗口已满时返回 -1
+     */
+    synchronized long send(int type, ByteString payload, int priority) {
+        if (mInFlight.size() >= mWindow) return -1;
+        // 帧头里的 id 是 varint，保持在 31 位以内
+        if (++mNextId <= 0) mNextId = 1;
+        InFlight entry = new InFlight(WsFrame.reliable(type, payload, mNextId, priority));
+        mInFlight.put(mNextId, entry);
+        mWheel.schedule(entry, entry.mTimeout);
+        // 未连接时先不入队，重连后由 onConnected 统一发出
+        if (mCallback.isConnected()) entry.mQueued = mCallback.enqueue(entry.mFrame);
+        return mNextId;
+    }
+
+    /**
+     * 发送线程写出（或写出失败）后调用，之后才需要按超时重发
+     */
+    synchronized void onWritten(WsFrame frame) {
+        InFlight entry = mInFlight.get(frame.getId());
+        if (entry != null && entry.mFrame == frame) entry.mQueued = false;
+    }
+
+    /**
+     * 处理 TYPE_ACK，在读线程上调用
+     */
+    void onAck(WsMessage message) {
+        ByteString source = message.mSource;
+        int pos = message.mOffset;
+        int end = message.mOffset + message.mLength;
+        while (pos < end) {
+            long value = WsFrameCodec.readVarint(source, pos);
+            if (value < 0) return;
+            pos = (int) (value >>> 32);
+            InFlight entry;
+            synchronized (this) {
+                entry = mInFlight.remove((int) value);
+                if (entry != null) mWheel.cancel(entry);
+            }
+            if (entry != null) mCallback.onAcked(entry.mFrame);
+        }
+    }
+
+    /**
+     * 新连接建立后调用：已经写出过的在途消息在旧连接上可能丢了，全部重发
+     */
+    void onConnected() {
+        synchronized (this) {
+            mInFlight.forEach((id, entry) -> {
+                if (!entry.mQueued) mRetransmits.add(entry);
+            });
+            for (int i = 0, size = mRetransmits.size(); i < size; i++) {
+                InFlight entry = mRetransmits.get(i);
+                entry.mTimeout = mRetransmitTimeout;
+                entry.mQueued = mCallback.enqueue(entry.mFrame);
+                mWheel.schedule(entry, entry.mTimeout);
+            }
+            mRetransmits.clear();
+        }
+    }
+
+    synchronized int inFlightCount() {
+        return mInFlight.size();
+    }
+
+    /** WsManager.release 时调用，取消所有超时 */
+    synchronized void shutdown() {
+        mInFlight.forEach((id, entry) -> mWheel.cancel(entry));
+        mInFlight.clear();
+    }
+
+    // ws-scheduler 线程
+    private void onExpired(InFlight entry) {
+        boolean gaveUp = false;
+        synchronized (this) {
+            // 到期和确认同时发生时，以确认为准
+            if (mInFlight.get(entry.mFrame.getId()) != entry) return;
+            if (entry.mQueued || !mCallback.isConnected()) {
+                // 还没写出去或者断线中，不算一次重发
+                mWheel.schedule(entry, entry.mTimeout);
+            } else if (++entry.mAttempts >= mMaxAttempts) {
+                mInFlight.remove(entry.mFrame.getId());
+                gaveUp = true;
+            } else {
+                entry.mTimeout = Math.min(MAX_RETRANSMIT_TIMEOUT, entry.mTimeout * 2);
+                entry.mQueued = mCallback.enqueue(entry.mFrame);
+                mWheel.schedule(entry, entry.mTimeout);
+            }
+        }
+        if (gaveUp) mCallback.onGaveUp(entry.mFrame);
+    }
+}
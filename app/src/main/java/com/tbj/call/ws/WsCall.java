@@ -0,0 +1,161 @@
+package com.tbj.call.ws;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import okio.ByteString;
+
+/**
+ * 一次 RPC 调用的结果，由 WsManager.call 返回
+ *
+ * minSdk 16 用不了 CompletableFuture，这里实现 Future 并提供 whenComplete 回调：
+ * 可以在后台线程 get() 阻塞等待，也可以注册回调，回调线程由 WsManager.Builder.dispatchPolicy 决定
+ *
+ * 失败原因：超时是 TimeoutException，服务端返回错误是 RemoteException，未连接、连接释放或发送队列已满是 IOException
+ */
+public final class WsCall extends WsTimerWheel.Timeout implements Future<ByteString> {
+
+    public interface Callback {
+        /** result 和 error 有且只有一个不为 null */
+        void onComplete(WsCall call, ByteString result, Exception error);
+    }
+
+    /** 服务端处理失败，code 和 message 由服务端给出 */
+    public static final class RemoteException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int mCode;
+
+        RemoteException(int code, String message) {
+            super(message);
+            mCode = code;
+        }
+
+        public int getCode() {
+            return mCode;
+        }
+    }
+
+    private static final int PENDING = 0;
+    private static final int DONE = 1;
+    private static final int CANCELLED = 2;
+
+    private final WsRpc mRpc;
+    private final int mId;
+    private final String mMethod;
+    private final Executor mExecutor;
+
+    private int mState = PENDING;
+    private ByteString mResult;
+    private Exception mError;
+    private Callback mCallback;
+
+    WsCall(WsRpc rpc, int id, String method, Executor executor) {
+        mRpc = rpc;
+        mId = id;
+        mMethod = method;
+        mExecutor = executor;
+    }
+
+    public int getId() {
+        return mId;
+    }
+
+    public String getMethod() {
+        return mMethod;
+    }
+
+    /**
+     * 调用完成后回调，已经完成时立即分发；只保留最后一次设置的回调
+     */
+    public WsCall whenComplete(Callback callback) {
+        boolean done;
+        synchronized (this) {
+            mCallback = callback;
+            done = mState == DONE;
+        }
+        if (done) notifyCallback(callback);
+        return this;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if (mState != PENDING) return false;
+            mState = CANCELLED;
+            notifyAll();
+        }
+        mRpc.remove(this);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mState == CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mState != PENDING;
+    }
+
+    @Override
+    public synchronized ByteString get() throws InterruptedException, ExecutionException {
+        while (mState == PENDING) wait();
+        return report();
+    }
+
+    @Override
+    public synchronized ByteString get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long remaining = unit.toNanos(timeout);
+        long deadline = System.nanoTime() + remaining;
+        while (mState == PENDING) {
+            if (remaining <= 0) throw new TimeoutException();
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            remaining = deadline - System.nanoTime();
+        }
+        return report();
+    }
+
+    private ByteString report() throws ExecutionException {
+        if (mState == CANCELLED) throw new CancellationException();
+        if (mError != null) throw new ExecutionException(mError);
+        return mResult;
+    }
+
+    /** @return false 表示已经完成或被取消 */
+    boolean complete(ByteString result, Exception error) {
+        Callback callback;
+        synchronized (this) {
+            if (mState != PENDING) return false;
+            mState = DONE;
+            mResult = result;
+            mError = error;
+            callback = mCallback;
+            notifyAll();
+        }
+        if (callback != null) notifyCallback(callback);
+        return true;
+    }
+
+    private void notifyCallback(Callback callback) {
+        mExecutor.execute(() -> callback.onComplete(this, mResult, mError));
+    }
+
+    // 时间轮到期，在 ws-scheduler 线程上
+    @Override
+    void onExpired() {
+        mRpc.onTimeout(this);
+    }
+
+    @Override
+    public String toString() {
+        return "WsCall{" + mId + ", " + mMethod + "}";
+    }
+}
@@ -0,0 +1,85 @@
+package com.tbj.call.ws;
+
+import okio.ByteString;
+
+/**
+ * 复用同一个 WsManager 连接的逻辑通道，通过 WsManager.openChannel 获得
+ *
+ * 每个通道有自己的监听和发送队列，多个通道在发送线程上公平轮转；
+ * 连接重建后已打开的通道会自动重新声明，不需要业务处理
+ */
+public final class WsChannel {
+
+    private final WsManager mManager;
+    private final int mId;
+    private final String mName;
+    private final Listener mListener;
+    private volatile boolean mClosed;
+
+    WsChannel(WsManager manager, int id, String name, Listener listener) {
+        mManager = manager;
+        mId = id;
+        mName = name;
+        mListener = listener;
+    }
+
+    public int getId() {
+        return mId;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    /**
+     * 在这个通道上发送一条带类型的消息，type 取值 0 ~ 127
+     * @return false 表示通道已关闭或发送队列已满
+     */
+    public boolean send(int type, ByteString payload) {
+        return send(type, payload, WsPriority.NORMAL);
+    }
+
+    /** @param priority WsPriority.HIGH / NORMAL / BULK */
+    public boolean send(int type, ByteString payload, int priority) {
+        if (type < 0 || type > WsFrameCodec.TYPE_USER_MAX) {
+            throw new IllegalArgumentException("type out of range: " + type);
+        }
+        return !mClosed && mManager.sendOnChannel(mId, type, payload, priority);
+    }
+
+    /** 关闭通道，还没写出的消息会被丢弃 */
+    public void close() {
+        mManager.closeChannel(this);
+    }
+
+    Listener getListener() {
+        return mListener;
+    }
+
+    void markClosed() {
+        mClosed = true;
+    }
+
+    @Override
+    public String toString() {
+        return "WsChannel{" + mId + ", " + mName + "}";
+    }
+
+    /**
+     * 通道监听，回调线程由 WsManager.Builder.dispatchPolicy 决定，和主监听保持同一顺序
+     */
+    public abstract static class Listener {
+
+        /** message 只在回调期间有效 */
+        public void onMessage(WsChannel channel, WsMessage message) {
+        }
+
+        /** 本地调用 close 或者服务端关闭了通道 */
+        public void onClosed(WsChannel channel) {
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.tbj.call.ws;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * 所有 WsManager 共用的 OkHttpClient
+ *
+ * - 一个 Dispatcher、一个 ConnectionPool，多个连接不会各起一套线程和连接池
+ * - 只用 HTTP/1.1：WebSocket 握手本来就只走 HTTP/1.1，预热建立的连接才能被握手复用
+ * - readTimeout 为 0：OkHttp 3.5 把 readTimeout 作用在整个 WebSocket 生命周期上，空闲时间超过它就会断开，
+ *   链路是否存活交给 HeartbeatEngine 判断
+ * - 默认不开 OkHttp 的 ping：3.5 的 ping 只发不检查回应，保活由自适应心跳负责，两者同时开会多唤醒射频
+ *
+ * 地址确定后尽早调用 warmUp（MockService 在拿到 mock server 地址时调用），提前做 DNS 解析和 TLS 握手，缩短首次 onOpen 的时间
+ */
+public final class WsClients {
+
+    private static final String TAG = "MockWebSocket";
+
+    public static final long CONNECT_TIMEOUT = 10 * 1000; // ms
+    public static final long WRITE_TIMEOUT = 10 * 1000;
+    public static final long READ_TIMEOUT = 0;
+    public static final long PING_INTERVAL = 0;
+    private static final long WARM_UP_TIMEOUT = 5 * 1000;
+
+    private static volatile OkHttpClient sClient;
+
+    private WsClients() {
+    }
+
+    public static OkHttpClient get() {
+        if (sClient == null) {
+            synchronized (WsClients.class) {
+                if (sClient == null) {
+                    sClient = new OkHttpClient.Builder()
+                            .protocols(Collections.singletonList(Protocol.HTTP_1_1))
+                            .connectTimeout(CONNECT_TIMEOUT, TimeUnit.MILLISECONDS)
+                            .writeTimeout(WRITE_TIMEOUT, TimeUnit.MILLISECONDS)
+                            .readTimeout(READ_TIMEOUT, TimeUnit.MILLISECONDS)
+                            .pingInterval(PING_INTERVAL, TimeUnit.MILLISECONDS)
+                            .build();
+                }
+            }
+        }
+        return sClient;
+    }
+
+    /**
+     * 需要单独调整超时或 ping 时用这个，得到的 client 仍然共用线程和连接池
+     */
+    public static OkHttpClient.Builder newBuilder() {
+        return get().newBuilder();
+    }
+
+    /**
+     * 在后台线程预先解析域名；wss 地址再发一个 HEAD 请求完成 TLS 握手，连接留在连接池里给之后的握手复用，
+     * 即使服务端不保留连接，TLS 会话缓存也能让下一次握手走简化流程。失败只打日志
+     */
+    public static void warmUp(String... urls) {
+        if (urls == null || urls.length == 0) return;
+        OkHttpClient client = get();
+        client.dispatcher().executorService().execute(() -> {
+            OkHttpClient warmUpClient = client.newBuilder()
+                    .readTimeout(WARM_UP_TIMEOUT, TimeUnit.MILLISECONDS)
+                    .build();
+            for (String url : urls) {
+                warmUp(warmUpClient, url);
+            }
+        });
+    }
+
+    private static void warmUp(OkHttpClient client, String url) {
+        HttpUrl httpUrl = toHttpUrl(url);
+        if (httpUrl == null) return;
+        long start = System.nanoTime();
+        try {
+            client.dns().lookup(httpUrl.host());
+            if (httpUrl.isHttps()) {
+                Response response = client.newCall(new Request.Builder().url(httpUrl).head().build()).execute();
+                response.close();
+            }
+            Log.i(TAG, "warm up " + httpUrl.host() + " in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+        } catch (IOException e) {
+            Log.w(TAG, "warm up " + httpUrl.host() + " failed: " + e);
+        }
+    }
+
+    // HttpUrl 不认识 ws / wss，和 Request.Builder.url 一样换成 http / https
+    private static HttpUrl toHttpUrl(String url) {
+        if (url.regionMatches(true, 0, "ws:", 0, 3)) {
+            url = "http:" + url.substring(3);
+        } else if (url.regionMatches(true, 0, "wss:", 0, 4)) {
+            url = "https:" + url.substring(4);
+        }
+        return HttpUrl.parse(url);
+    }
+}
@@ -0,0 +1,50 @@
+package com.tbj.call.ws;
+
+/**
+ * 压缩统计快照：节省的字节数和花费的 CPU 时间
+ */
+public final class WsCompressionStats {
+
+    public final boolean enabled;
+    public final long deflatedFrames;
+    public final long deflateBytesIn;
+    public final long deflateBytesOut;
+    public final long deflateNanos;
+    public final long inflatedFrames;
+    public final long inflateBytesIn;
+    public final long inflateBytesOut;
+    public final long inflateNanos;
+
+    WsCompressionStats(boolean enabled, long deflatedFrames, long deflateBytesIn, long deflateBytesOut,
+                       long deflateNanos, long inflatedFrames, long inflateBytesIn, long inflateBytesOut,
+                       long inflateNanos) {
+        this.enabled = enabled;
+        this.deflatedFrames = deflatedFrames;
+        this.deflateBytesIn = deflateBytesIn;
+        this.deflateBytesOut = deflateBytesOut;
+        this.deflateNanos = deflateNanos;
+        this.inflatedFrames = inflatedFrames;
+        this.inflateBytesIn = inflateBytesIn;
+        this.inflateBytesOut = inflateBytesOut;
+        this.inflateNanos = inflateNanos;
+    }
+
+    /** 发送和接收方向一共节省的字节数 */
+    public long savedBytes() {
+        return (deflateBytesIn - deflateBytesOut) + (inflateBytesOut - inflateBytesIn);
+    }
+
+    /** 每节省 1KB 花费的 CPU 微秒数 */
+    public double microsPerKbSaved() {
+        long saved = savedBytes();
+        return saved <= 0 ? 0 : (deflateNanos + inflateNanos) / 1000.0 / (saved / 1024.0);
+    }
+
+    @Override
+    public String toString() {
+        return "WsCompressionStats{enabled=" + enabled
+                + ", out " + deflateBytesIn + "->" + deflateBytesOut + " in " + deflatedFrames + " frames / " + deflateNanos / 1000 + "us"
+                + ", in " + inflateBytesIn + "->" + inflateBytesOut + " in " + inflatedFrames + " frames / " + inflateNanos / 1000 + "us"
+                + ", saved " + savedBytes() + "}";
+    }
+}
@@ -0,0 +1,168 @@
+package com.tbj.call.ws;
+
+import android.os.Build;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import okio.ByteString;
+
+/**
+ * 应用层的 permessage-deflate：OkHttp 3.5.0 不支持 WebSocket 扩展协商，所以在 WsFrameCodec 的帧上压缩 payload
+ *
+ * - 握手时带上 X-Ws-Compress: deflate，服务端在 101 响应里回同样的头才启用
+ * - 每个连接一对复用的 Deflater / Inflater，context takeover：压缩字典跨帧保留，连接重建时重置
+ * - payload 小于阈值的帧不压缩
+ * - 和 permessage-deflate 一样去掉 SYNC_FLUSH 末尾的 00 00 ff ff，解压时补回
+ *
+ * API 19 以下没有带 SYNC_FLUSH 的 Deflater.deflate，发出的帧不压缩；服务端发来的压缩帧照常解压，
+ * 包括每帧独立压缩（FLAG_DEFLATE_RESET）的
+ *
+ * Deflater 只在发送线程使用，Inflater 只在读线程使用
+ */
+final class WsCompressor {
+
+    static final String HEADER = "X-Ws-Compress";
+    static final String DEFLATE = "deflate";
+
+    static final int FLAG_DEFLATE = 0x01;
+    /** 该帧是一个独立的 deflate 流，解压前后都要重置 Inflater */
+    static final int FLAG_DEFLATE_RESET = 0x02;
+
+    static final int DEFAULT_THRESHOLD = 256;
+
+    private static final int MAX_INFLATED_SIZE = 16 * 1024 * 1024;
+    private static final byte[] EMPTY_BLOCK_TAIL = {0x00, 0x00, (byte) 0xff, (byte) 0xff};
+
+    private final int mThreshold;
+    private final Deflater mDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final Inflater mInflater = new Inflater(true);
+
+    private byte[] mDeflateInput = new byte[1024];
+    private byte[] mDeflateOutput = new byte[1024];
+    private byte[] mInflateInput = new byte[1024];
+    private byte[] mInflateOutput = new byte[4096];
+
+    private volatile boolean mEnabled;
+    private volatile int mGeneration;
+    private int mDeflaterGeneration;
+
+    // 压缩统计只由发送线程写，解压统计只由读线程写
+    private volatile long mDeflatedFrames;
+    private volatile long mDeflateBytesIn;
+    private volatile long mDeflateBytesOut;
+    private volatile long mDeflateNanos;
+    private volatile long mInflatedFrames;
+    private volatile long mInflateBytesIn;
+    private volatile long mInflateBytesOut;
+    private volatile long mInflateNanos;
+
+    WsCompressor(int threshold) {
+        mThreshold = threshold;
+    }
+
+    /**
+     * 新连接 onOpen 时在读线程调用，根据握手响应决定是否启用并重置压缩上下文
+     */
+    void onOpen(String negotiated) {
+        mEnabled = DEFLATE.equalsIgnoreCase(negotiated);
+        mInflater.reset();
+        mGeneration++;
+    }
+
+    boolean shouldCompress(ByteString payload) {
+        return mEnabled && payload.size() >= mThreshold && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    }
+
+    /**
+     * 发送线程调用，压缩后的帧要带上 deflateFlags()；只在 shouldCompress 返回 true 时调用
+     */
+    ByteString deflate(ByteString payload) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) throw new IllegalStateException("deflate requires API 19");
+        long start = System.nanoTime();
+        if (mDeflaterGeneration != mGeneration) {
+            mDeflaterGeneration = mGeneration;
+            mDeflater.reset();
+        }
+        int size = payload.size();
+        if (mDeflateInput.length < size) mDeflateInput = new byte[Integer.highestOneBit(size) << 1];
+        payload.asByteBuffer().get(mDeflateInput, 0, size);
+        mDeflater.setInput(mDeflateInput, 0, size);
+
+        int length = 0;
+        while (true) {
+            length += mDeflater.deflate(mDeflateOutput, length, mDeflateOutput.length - length, Deflater.SYNC_FLUSH);
+            if (length < mDeflateOutput.length) break;
+            mDeflateOutput = grow(mDeflateOutput, length);
+        }
+        // 去掉 SYNC_FLUSH 产生的空块尾巴
+        if (length >= 4 && endsWithTail(mDeflateOutput, length)) length -= 4;
+        ByteString result = ByteString.of(mDeflateOutput, 0, length);
+
+        mDeflatedFrames++;
+        mDeflateBytesIn += size;
+        mDeflateBytesOut += length;
+        mDeflateNanos += System.nanoTime() - start;
+        return result;
+    }
+
+    int deflateFlags() {
+        return FLAG_DEFLATE;
+    }
+
+    /**
+     * 读线程调用，解压 message 的 payload
+     */
+    ByteString inflate(WsMessage message) throws DataFormatException {
+        long start = System.nanoTime();
+        boolean reset = (message.flags() & FLAG_DEFLATE_RESET) != 0;
+        int size = message.size();
+        int inputSize = reset ? size : size + EMPTY_BLOCK_TAIL.length;
+        if (mInflateInput.length < inputSize) mInflateInput = new byte[Integer.highestOneBit(inputSize) << 1];
+        message.copyTo(mInflateInput, 0);
+        if (!reset) System.arraycopy(EMPTY_BLOCK_TAIL, 0, mInflateInput, size, EMPTY_BLOCK_TAIL.length);
+
+        if (reset) mInflater.reset();
+        mInflater.setInput(mInflateInput, 0, inputSize);
+        int length = 0;
+        while (true) {
+            int n = mInflater.inflate(mInflateOutput, length, mInflateOutput.length - length);
+            length += n;
+            if (length > MAX_INFLATED_SIZE) throw new DataFormatException("inflated frame too large");
+            if (length == mInflateOutput.length) {
+                // 输出缓冲区满了，Inflater 里可能还有没吐出来的数据
+                mInflateOutput = grow(mInflateOutput, length);
+                continue;
+            }
+            if (mInflater.finished() || mInflater.needsInput()) break;
+            if (n == 0) throw new DataFormatException("inflater stalled");
+        }
+        if (reset) mInflater.reset();
+        ByteString result = ByteString.of(mInflateOutput, 0, length);
+
+        mInflatedFrames++;
+        mInflateBytesIn += size;
+        mInflateBytesOut += length;
+        mInflateNanos += System.nanoTime() - start;
+        return result;
+    }
+
+    WsCompressionStats stats() {
+        return new WsCompressionStats(mEnabled, mDeflatedFrames, mDeflateBytesIn, mDeflateBytesOut, mDeflateNanos,
+                mInflatedFrames, mInflateBytesIn, mInflateBytesOut, mInflateNanos);
+    }
+
+    private static boolean endsWithTail(byte[] buffer, int length) {
+        for (int i = 0; i < 4; i++) {
+            if (buffer[length - 4 + i] != EMPTY_BLOCK_TAIL[i]) return false;
+        }
+        return true;
+    }
+
+    private static byte[] grow(byte[] buffer, int length) {
+        byte[] bigger = new byte[buffer.length * 2];
+        System.arraycopy(buffer, 0, bigger, 0, length);
+        return bigger;
+    }
+}
@@ -0,0 +1,154 @@
+package com.tbj.call.ws;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * WsStatusListener 回调的分发策略，通过 WsManager.Builder.dispatchPolicy 选择
+ *
+ * 除 MAIN_THREAD 外回调都不在主线程，需要更新 UI 的监听者自己切换线程。
+ * 所有策略都捕获监听抛出的 RuntimeException 并打日志，一个监听出错不会卡住后续回调、也不会打断读线程或主线程
+ */
+public abstract class WsDispatcher implements Executor {
+
+    private static final String TAG = "MockWebSocket";
+
+    /** 主线程，每条回调 post 一次到主线程 Looper，消息量大时会卡 UI */
+    public static final int MAIN_THREAD = 0;
+    /** 每个连接独占一个串行线程 */
+    public static final int SERIAL = 1;
+    /** 所有连接共用一个线程池，同一连接内保持顺序（默认） */
+    public static final int SHARED_POOL = 2;
+    /** 直接在 OkHttp 读线程回调，监听者不能做耗时操作 */
+    public static final int DIRECT = 3;
+
+    static WsDispatcher create(int policy, String name) {
+        switch (policy) {
+            case MAIN_THREAD:
+                return new MainThreadDispatcher();
+            case SERIAL:
+                return new SerialDispatcher(name);
+            case DIRECT:
+                return new DirectDispatcher();
+            case SHARED_POOL:
+            default:
+                return new OrderedDispatcher(SharedPool.EXECUTOR);
+        }
+    }
+
+    /** 在 pool 上串行执行，同一时刻最多占用一个池线程 */
+    static WsDispatcher ordered(Executor pool) {
+        return new OrderedDispatcher(pool);
+    }
+
+    /** 释放独占的线程 */
+    void shutdown() {
+    }
+
+    static void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "listener threw", e);
+        }
+    }
+
+    private static final class MainThreadDispatcher extends WsDispatcher {
+
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable command) {
+            if (Looper.myLooper() != Looper.getMainLooper()) {
+                mHandler.post(() -> runSafely(command));
+            } else {
+                runSafely(command);
+            }
+        }
+    }
+
+    private static final class SerialDispatcher extends WsDispatcher {
+
+        private final ExecutorService mExecutor;
+
+        SerialDispatcher(String name) {
+            mExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "ws-dispatch " + name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            mExecutor.execute(() -> runSafely(command));
+        }
+
+        @Override
+        void shutdown() {
+            mExecutor.shutdown();
+        }
+    }
+
+    private static final class DirectDispatcher extends WsDispatcher {
+
+        @Override
+        public void execute(Runnable command) {
+            runSafely(command);
+        }
+    }
+
+    /**
+     * 在共享线程池上串行执行：同一时刻最多占用一个池线程，一次把积压的任务全部跑完再让出
+     */
+    private static final class OrderedDispatcher extends WsDispatcher {
+
+        private final Executor mPool;
+        private final Queue<Runnable> mTasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean mScheduled = new AtomicBoolean();
+        private final Runnable mDrain = this::drain;
+
+        OrderedDispatcher(Executor pool) {
+            mPool = pool;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            mTasks.offer(command);
+            if (mScheduled.compareAndSet(false, true)) {
+                mPool.execute(mDrain);
+            }
+        }
+
+        private void drain() {
+            do {
+                Runnable task;
+                while ((task = mTasks.poll()) != null) {
+                    runSafely(task);
+                }
+                mScheduled.set(false);
+            } while (!mTasks.isEmpty() && mScheduled.compareAndSet(false, true));
+        }
+    }
+
+    private static final class SharedPool {
+
+        private static final AtomicInteger sIndex = new AtomicInteger();
+
+        static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+                    Thread thread = new Thread(r, "ws-dispatch-" + sIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+}
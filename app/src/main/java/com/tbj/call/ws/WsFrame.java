@@ -0,0 +1,123 @@
+package com.tbj.call.ws;
+
+import okio.ByteString;
+
+/**
+ * 待发送的一帧数据：文本、原始二进制，或者由 WsFrameCodec 编码的带类型二进制消息
+ */
+public final class WsFrame {
+
+    static final int TYPE_NONE = -1;
+
+    private final String mText;
+    private final ByteString mBytes;
+    private final int mType;
+    private final int mChannel;
+    private final long mId;
+    private final int mPriority;
+    long mEnqueuedAt; // 进入内存发送队列的时刻，用于统计排队时间
+
+    private WsFrame(String text, ByteString bytes, int type, int channel, long id, int priority) {
+        WsPriority.check(priority);
+        mText = text;
+        mBytes = bytes;
+        mType = type;
+        mChannel = channel;
+        mId = id;
+        mPriority = priority;
+    }
+
+    public static WsFrame text(String text) {
+        return text(text, WsPriority.NORMAL);
+    }
+
+    public static WsFrame text(String text, int priority) {
+        return new WsFrame(text, null, TYPE_NONE, 0, 0, priority);
+    }
+
+    public static WsFrame binary(ByteString bytes) {
+        return binary(bytes, WsPriority.NORMAL);
+    }
+
+    public static WsFrame binary(ByteString bytes, int priority) {
+        return new WsFrame(null, bytes, TYPE_NONE, 0, 0, priority);
+    }
+
+    /**
+     * 带类型的二进制消息，在发送线程上按 WsFrameCodec 的帧格式编码
+     */
+    public static WsFrame message(int type, ByteString payload) {
+        return message(type, payload, WsPriority.NORMAL);
+    }
+
+    /**
+     * 超过 Builder.fragmentSize 的消息会被分片，和其它优先级的数据交错写出
+     */
+    public static WsFrame message(int type, ByteString payload, int priority) {
+        return new WsFrame(null, payload, type, 0, 0, priority);
+    }
+
+    /** 发往逻辑通道 channel 的消息 */
+    static WsFrame message(int channel, int type, ByteString payload, int priority) {
+        return new WsFrame(null, payload, type, channel, 0, priority);
+    }
+
+    /** 需要服务端确认的消息，见 WsAckTracker */
+    static WsFrame reliable(int type, ByteString payload, long id, int priority) {
+        return new WsFrame(null, payload, type, 0, id, priority);
+    }
+
+    public boolean isText() {
+        return mText != null;
+    }
+
+    public boolean isMessage() {
+        return mType != TYPE_NONE;
+    }
+
+    public boolean isReliable() {
+        return mId != 0;
+    }
+
+    public String getText() {
+        return mText;
+    }
+
+    /** 原始二进制帧的内容，或者 message 的 payload */
+    public ByteString getBytes() {
+        return mBytes;
+    }
+
+    public int getType() {
+        return mType;
+    }
+
+    /** 逻辑通道号，0 表示主通道 */
+    public int getChannel() {
+        return mChannel;
+    }
+
+    /** WsPriority.HIGH / NORMAL / BULK */
+    public int getPriority() {
+        return mPriority;
+    }
+
+    /** 可靠消息的 id，和 WsManager.sendReliable 的返回值一致；普通消息为 0 */
+    public long getId() {
+        return mId;
+    }
+
+    /** 用于水位估算的字节数，文本按字符数近似 */
+    public long size() {
+        if (mText != null) return mText.length();
+        return isMessage() ? mBytes.size() + WsFrameCodec.MAX_HEADER_SIZE : mBytes.size();
+    }
+
+    @Override
+    public String toString() {
+        if (mText != null) return "WsFrame{text, " + mText.length() + "}";
+        if (isReliable()) return "WsFrame{reliable " + mType + ", id " + mId + ", " + mBytes.size() + ", " + WsPriority.name(mPriority) + "}";
+        if (isMessage()) return "WsFrame{message " + mType + ", channel " + mChannel + ", " + mBytes.size() + ", " + WsPriority.name(mPriority) + "}";
+        return "WsFrame{binary, " + mBytes.size() + "}";
+    }
+}
@@ -0,0 +1,247 @@
+package com.tbj.call.ws;
+
+import okio.Buffer;
+import okio.ByteString;
+
+/**
+ * 二进制消息帧编解码
+ *
+ *   | type(1) | flags(1) | [channel(varint)] | [seq(varint)] | [id(varint)] | [fragment(varint)] | [topic] | length(varint) | payload(length) |
+ *
+ * 一条 WebSocket 二进制消息里可以连续放多帧。type 0 ~ 127 留给业务，128 以上是内部控制帧。
+ * flags 带 FLAG_CHANNEL 时后面跟逻辑通道号，没有则属于通道 0（主通道）。
+ * flags 带 FLAG_SEQ 时后面跟服务端给的会话内序号，用于断线续传，见 WsSession。
+ * flags 带 FLAG_ID 时后面跟需要对端确认的消息 id，见 WsAckTracker。
+ * flags 带 FLAG_FRAGMENT 时后面跟 (优先级 << 1 | 是否还有后续分片)，同一通道、同一优先级的分片按顺序拼成一条消息，
+ * 分片的消息不压缩。
+ * flags 带 FLAG_TOPIC 时后面跟 topic：| 长度(varint) | UTF-8 |，放在帧头里，WsRouter 不用解码 payload 就能路由；
+ * 分片消息的 topic 放在最后一个分片上。
+ *
+ * 解码直接在收到的 ByteString 上按下标读取，结果放进复用的 WsMessage，不产生中间 String；
+ * 编码复用同一个 okio Buffer，Segment 用完会回到 okio 的 SegmentPool
+ */
+final class WsFrameCodec {
+
+    static final int TYPE_USER_MAX = 127;
+
+    /** 打开逻辑通道，payload 是通道名（UTF-8） */
+    static final int TYPE_CHANNEL_OPEN = 128;
+    /** 关闭逻辑通道 */
+    static final int TYPE_CHANNEL_CLOSE = 129;
+    /** 客户端请求续传，payload 见 WsSession.resumeFrame */
+    static final int TYPE_RESUME = 130;
+    /** 服务端下发会话，payload 见 WsSession.onSession */
+    static final int TYPE_SESSION = 131;
+    /** 服务端确认可靠消息，payload 是若干个 id 的 varint */
+    static final int TYPE_ACK = 132;
+    /** RPC 请求和响应，payload 见 WsRpc */
+    static final int TYPE_RPC_REQUEST = 133;
+    static final int TYPE_RPC_RESPONSE = 134;
+    /** 流式传输，payload 见 WsStreams */
+    static final int TYPE_STREAM_OPEN = 135;
+    static final int TYPE_STREAM_DATA = 136;
+    static final int TYPE_STREAM_END = 137;
+    static final int TYPE_STREAM_CREDIT = 138;
+    /** 客户端给服务端的入站额度，payload 是增加的消息条数（varint），见 WsInbound */
+    static final int TYPE_FLOW_CREDIT = 139;
+
+    // 0x01 / 0x02 见 WsCompressor
+    static final int FLAG_CHANNEL = 0x04;
+    static final int FLAG_SEQ = 0x08;
+    static final int FLAG_ID = 0x10;
+    static final int FLAG_FRAGMENT = 0x20;
+    static final int FLAG_TOPIC = 0x40;
+
+    /** type + flags + channel、id、length 三个最长 5 字节的 varint + 1 字节的 fragment（上行不带 seq） */
+    static final int MAX_HEADER_SIZE = 18;
+
+    private static final int POOL_SIZE = 64;
+
+    interface Consumer {
+        /** message 在回调返回后仍归调用方所有，用完需要 recycle */
+        void onMessage(WsMessage message);
+    }
+
+    private final Buffer mBuffer = new Buffer();
+    private final BoundedMpscQueue<WsMessage> mPool = new BoundedMpscQueue<>(POOL_SIZE);
+    private final WsInternCache mIntern;
+
+    WsFrameCodec() {
+        this(null);
+    }
+
+    /** @param intern 解码出的 WsMessage 用它驻留重复的小 payload，可以为 null */
+    WsFrameCodec(WsInternCache intern) {
+        mIntern = intern;
+    }
+
+    /**
+     * 编码一帧，只能在单个线程（发送线程）上调用
+     */
+    ByteString encode(int type, int flags, int channel, int id, ByteString payload) {
+        writeHeader(mBuffer, type, flags, channel, id, payload.size());
+        mBuffer.write(payload);
+        return mBuffer.readByteString();
+    }
+
+    /**
+     * 编码 payload[offset, offset + length) 这一个分片，只能在发送线程上调用
+     */
+    ByteString encodeFragment(int type, int channel, int id, int priority, boolean more,
+                              byte[] payload, int offset, int length) {
+        writeHeader(mBuffer, type, 0, channel, id, priority << 1 | (more ? 1 : 0), length);
+        mBuffer.write(payload, offset, length);
+        return mBuffer.readByteString();
+    }
+
+    /**
+     * 控制帧等低频场景用，可以在任意线程调用
+     */
+    static ByteString encodeFrame(int type, int flags, int channel, ByteString payload) {
+        Buffer buffer = new Buffer();
+        writeHeader(buffer, type, flags, channel, 0, payload.size());
+        buffer.write(payload);
+        return buffer.readByteString();
+    }
+
+    /**
+     * 带 topic 的帧，给 mock 服务端和压测用，可以在任意线程调用
+     */
+    static ByteString encodeTopicFrame(int type, String topic, ByteString payload) {
+        Buffer buffer = new Buffer();
+        ByteString topicBytes = ByteString.encodeUtf8(topic);
+        buffer.writeByte(type);
+        buffer.writeByte(FLAG_TOPIC);
+        writeVarint(buffer, topicBytes.size());
+        buffer.write(topicBytes);
+        writeVarint(buffer, payload.size());
+        buffer.write(payload);
+        return buffer.readByteString();
+    }
+
+    static void writeHeader(Buffer sink, int type, int flags, int channel, int id, int length) {
+        writeHeader(sink, type, flags, channel, id, -1, length);
+    }
+
+    /** fragment 为 -1 表示不分片 */
+    static void writeHeader(Buffer sink, int type, int flags, int channel, int id, int fragment, int length) {
+        if (channel != 0) flags |= FLAG_CHANNEL;
+        if (id != 0) flags |= FLAG_ID;
+        if (fragment >= 0) flags |= FLAG_FRAGMENT;
+        sink.writeByte(type);
+        sink.writeByte(flags);
+        if (channel != 0) writeVarint(sink, channel);
+        if (id != 0) writeVarint(sink, id);
+        if (fragment >= 0) writeVarint(sink, fragment);
+        writeVarint(sink, length);
+    }
+
+    static void writeVarint(Buffer sink, int value) {
+        while ((value & ~0x7f) != 0) {
+            sink.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        sink.writeByte(value);
+    }
+
+    /**
+     * 解码 bytes 里的所有帧，每帧回调一次
+     * @return 格式错误时返回 false，已经回调出去的帧不受影响
+     */
+    boolean decode(ByteString bytes, Consumer consumer) {
+        int size = bytes.size();
+        int pos = 0;
+        while (pos < size) {
+            if (size - pos < 3) return false;
+            int type = bytes.getByte(pos) & 0xff;
+            int flags = bytes.getByte(pos + 1) & 0xff;
+            pos += 2;
+            int channel = 0;
+            if ((flags & FLAG_CHANNEL) != 0) {
+                long value = readVarint(bytes, pos);
+                if (value < 0) return false;
+                channel = (int) value;
+                pos = (int) (value >>> 32);
+            }
+            int seq = 0;
+            if ((flags & FLAG_SEQ) != 0) {
+                long value = readVarint(bytes, pos);
+                if (value < 0) return false;
+                seq = (int) value;
+                pos = (int) (value >>> 32);
+            }
+            if ((flags & FLAG_ID) != 0) {
+                // 下行消息的确认由业务自己处理，这里只跳过
+                long value = readVarint(bytes, pos);
+                if (value < 0) return false;
+                pos = (int) (value >>> 32);
+            }
+            int fragment = -1;
+            if ((flags & FLAG_FRAGMENT) != 0) {
+                long value = readVarint(bytes, pos);
+                if (value < 0) return false;
+                fragment = (int) value;
+                pos = (int) (value >>> 32);
+            }
+            int topicOffset = -1;
+            int topicLength = 0;
+            if ((flags & FLAG_TOPIC) != 0) {
+                long value = readVarint(bytes, pos);
+                if (value < 0) return false;
+                topicLength = (int) value;
+                topicOffset = (int) (value >>> 32);
+                if (topicLength > size - topicOffset) return false;
+                pos = topicOffset + topicLength;
+            }
+            long value = readVarint(bytes, pos);
+            if (value < 0) return false;
+            int length = (int) value;
+            pos = (int) (value >>> 32);
+            if (length < 0 || length > size - pos) return false;
+            WsMessage message = obtain();
+            message.set(type, flags & ~(FLAG_CHANNEL | FLAG_SEQ | FLAG_ID | FLAG_TOPIC), channel, bytes, pos, length);
+            message.mSeq = seq;
+            message.mFragment = fragment;
+            if (topicOffset >= 0) {
+                message.mTopicSource = bytes;
+                message.mTopicOffset = topicOffset;
+                message.mTopicLength = topicLength;
+            }
+            consumer.onMessage(message);
+            pos += length;
+        }
+        return true;
+    }
+
+    /**
+     * 读一个 varint，为了不分配对象，把结束位置放在高 32 位、值放在低 32 位返回；格式错误返回 -1
+     */
+    static long readVarint(ByteString bytes, int pos) {
+        int size = bytes.size();
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (pos >= size || shift > 28) return -1;
+            b = bytes.getByte(pos++);
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        if (value < 0) return -1;
+        return (long) pos << 32 | value;
+    }
+
+    WsMessage obtain() {
+        WsMessage message = mPool.poll();
+        if (message == null) {
+            message = new WsMessage();
+            message.mIntern = mIntern;
+        }
+        return message;
+    }
+
+    void recycle(WsMessage message) {
+        message.clear();
+        mPool.offer(message);
+    }
+}
@@ -0,0 +1,115 @@
+package com.tbj.call.ws;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 对数-线性分桶的直方图（HdrHistogram 的简化版），用于延迟、大小等分布统计
+ *
+ * - 小于 64 的值每个值一个桶；之后每个 2 的幂区间再均分成 32 个桶，相对误差不超过 1/32（约 3%）
+ * - 固定 1184 个桶，覆盖 0 ~ 2^40，超出的值记在最后一个桶
+ * - 记录是一次 AtomicLongArray 自增，多线程并发记录不需要加锁；读取是近似快照
+ */
+public final class WsHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int HALF = 1 << SUB_BITS;       // 32
+    private static final int LINEAR = HALF * 2;          // 64
+    private static final int MAX_BIT = 40;
+    private static final int SIZE = HALF * (MAX_BIT - SUB_BITS) + LINEAR;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(SIZE);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        mCounts.incrementAndGet(indexOf(value));
+        mCount.incrementAndGet();
+        mSum.addAndGet(value);
+        long max;
+        while (value > (max = mMax.get()) && !mMax.compareAndSet(max, value)) {
+            // 重试
+        }
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public long getMax() {
+        return mMax.get();
+    }
+
+    public double getMean() {
+        long count = mCount.get();
+        return count == 0 ? 0 : (double) mSum.get() / count;
+    }
+
+    /**
+     * @param percentile 0 ~ 100
+     * @return 所在桶的上界（不超过记录到的最大值），没有数据时返回 0
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = mCount.get();
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < SIZE; i++) {
+            seen += mCounts.get(i);
+            if (seen >= rank) return Math.min(upperBound(i), mMax.get());
+        }
+        return mMax.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < SIZE; i++) {
+            mCounts.set(i, 0);
+        }
+        mCount.set(0);
+        mSum.set(0);
+        mMax.set(0);
+    }
+
+    /** 把另一个直方图的数据加进来 */
+    public void add(WsHistogram other) {
+        for (int i = 0; i < SIZE; i++) {
+            long count = other.mCounts.get(i);
+            if (count != 0) mCounts.addAndGet(i, count);
+        }
+        mCount.addAndGet(other.mCount.get());
+        mSum.addAndGet(other.mSum.get());
+        long value = other.mMax.get();
+        long max;
+        while (value > (max = mMax.get()) && !mMax.compareAndSet(max, value)) {
+            // 重试
+        }
+    }
+
+    static int indexOf(long value) {
+        if (value < LINEAR) return (int) value;
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        if (msb > MAX_BIT) return SIZE - 1;
+        int shift = msb - SUB_BITS;
+        return HALF * shift + (int) (value >>> shift);
+    }
+
+    static long upperBound(int index) {
+        if (index < LINEAR) return index;
+        int shift = index / HALF - 1;
+        long lower = (long) (index - HALF * shift) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "count " + getCount()
+                + " mean " + String.format("%.1f", getMean())
+                + " p50 " + getValueAtPercentile(50)
+                + " p90 " + getValueAtPercentile(90)
+                + " p99 " + getValueAtPercentile(99)
+                + " p99.9 " + getValueAtPercentile(99.9)
+                + " max " + getMax();
+    }
+}
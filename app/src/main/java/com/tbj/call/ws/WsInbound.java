@@ -0,0 +1,237 @@
+package com.tbj.call.ws;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 入站缓冲：读线程和监听之间的有界队列，每个 WsManager 一个，通过 WsManager.Builder.inboundBuffer 配置
+ *
+ * 所有监听回调按顺序进这个队列，分发器上同一时刻最多只有一个 drain 任务，监听慢时积压留在这里而不是主线程 Looper。
+ * 只有消息回调占容量，生命周期回调（onOpen、onClosed 等）总是入队；Builder.batch 合并的一批按条数占容量，
+ * 容量还没满时整批入队，所以最多超出 maxCount - 1 条。超过容量时按策略处理：
+ * - DROP_OLDEST：丢掉最早一条还没投递的消息（默认），适合只关心最新状态的场景
+ * - DROP_NEWEST：丢掉新到的消息
+ * - DISCONNECT：丢掉新到的消息并断开重连，之后这个连接上到达的消息都不再接收。开启 Builder.resume 时，
+ *   溢出的帧和之后的帧不计入已收到的序号，重连后由服务端补发；文本、原始二进制帧和分片消息没有可补发的序号，
+ *   没开 resume 时同样会丢
+ *
+ * 开启 Builder.inboundCredits 后，连接建立时把剩余容量作为额度告诉服务端（TYPE_FLOW_CREDIT），
+ * 监听每消费（或丢弃）容量的 1/4 再补充，服务端按额度发送时就不会溢出
+ *
+ * 消息不包成 Runnable：入队的是池化的 Entry（kind + 目标 + 内容 + 收到时刻），投递完回到空闲列表，
+ * 稳定状态下消息路径不分配对象；生命周期回调很少，直接用 Runnable
+ */
+public final class WsInbound {
+
+    public static final int DROP_OLDEST = 0;
+    public static final int DROP_NEWEST = 1;
+    public static final int DISCONNECT = 2;
+
+    static final int DEFAULT_CAPACITY = 8192;
+
+    /** 消息的种类，Callback.deliver 按它转给对应的监听方法 */
+    static final int KIND_TEXT = 1;
+    static final int KIND_BYTES = 2;
+    static final int KIND_MESSAGE = 3;
+    static final int KIND_CHANNEL_MESSAGE = 4;
+    static final int KIND_ROUTED = 5; // target 是 WsRouter.Subscriber[]
+    static final int KIND_BATCH = 6; // payload 是 InboundBatcher 合并的 List<String>
+
+    private static final int BATCH = 64; // 每次 drain 最多投递多少条再让出线程，主线程上不会长时间卡住
+    private static final int POOL_SIZE = 256;
+
+    interface Callback {
+        /** 在分发线程上投递一条消息 */
+        void deliver(int kind, Object target, Object payload, long receivedNanos);
+
+        /** 消息因为溢出被丢弃，比如回收 WsMessage */
+        void drop(int kind, Object payload);
+
+        /** 新到的消息溢出，在读线程上调用 */
+        void onOverflow(int policy);
+
+        /**
+         * 攒够了要补充给服务端的额度
+         * @return false 表示现在没有可写的连接，额度留到下次再补；重连时由 onConnected 重新计算
+         */
+        boolean onCredit(int credits);
+    }
+
+    private static final class Entry {
+        Runnable mTask; // 不为 null 表示生命周期回调，其余字段不用
+        int mKind;
+        Object mTarget;
+        Object mPayload;
+        long mReceived;
+        int mCount; // 占多少条容量
+
+        boolean isMessage() {
+            return mTask == null;
+        }
+    }
+
+    private final Executor mDispatcher;
+    private final int mCapacity;
+    private final int mPolicy;
+    private final int mCreditBatch;
+    private final Callback mCallback;
+    // 读线程在锁里取、分发线程还
+    private final BoundedMpscQueue<Entry> mPool = new BoundedMpscQueue<>(POOL_SIZE);
+
+    private final ArrayDeque<Entry> mEntries = new ArrayDeque<>(); // 以下由 this 保护
+    private int mMessages;
+    private boolean mScheduled;
+
+    private final AtomicInteger mUncredited = new AtomicInteger();
+
+    private final Runnable mDrainRunnable = this::drain;
+
+    WsInbound(Executor dispatcher, int capacity, int policy, Callback callback) {
+        mDispatcher = dispatcher;
+        mCapacity = Math.max(1, capacity);
+        mPolicy = policy;
+        mCreditBatch = Math.max(1, mCapacity / 4);
+        mCallback = callback;
+    }
+
+    /** 生命周期回调，不受容量限制 */
+    void execute(Runnable task) {
+        Entry entry = new Entry();
+        entry.mTask = task;
+        synchronized (this) {
+            mEntries.offer(entry);
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * 消息回调，在读线程上调用
+     * @param target KIND_CHANNEL_MESSAGE 时是 WsChannel，KIND_ROUTED 时是订阅者数组，其它为 null
+     * @return false 表示溢出
+     */
+    boolean offerMessage(int kind, Object target, Object payload, long receivedNanos) {
+        return offer(kind, target, payload, receivedNanos, 1);
+    }
+
+    /** 合并投递的一批文本，按条数计入容量和额度 */
+    boolean offerBatch(List<String> texts, long receivedNanos) {
+        return offer(KIND_BATCH, null, texts, receivedNanos, texts.size());
+    }
+
+    private boolean offer(int kind, Object target, Object payload, long receivedNanos, int count) {
+        Entry dropped = null;
+        synchronized (this) {
+            // 网络切换时新旧两个连接的读线程会同时调用，取 Entry 放在锁里，空闲列表仍然只有一个消费者
+            Entry entry = mPool.poll();
+            if (entry == null) entry = new Entry();
+            entry.mKind = kind;
+            entry.mTarget = target;
+            entry.mPayload = payload;
+            entry.mReceived = receivedNanos;
+            entry.mCount = count;
+            if (mMessages < mCapacity) {
+                mEntries.offer(entry);
+                mMessages += count;
+            } else if (mPolicy == DROP_OLDEST) {
+                dropped = removeOldestMessage();
+                mEntries.offer(entry);
+                mMessages += count - dropped.mCount;
+            } else {
+                dropped = entry;
+            }
+        }
+        if (dropped != null) {
+            mCallback.drop(dropped.mKind, dropped.mPayload);
+            int consumed = dropped.mCount;
+            recycle(dropped);
+            onConsumed(consumed);
+            mCallback.onOverflow(mPolicy);
+            if (mPolicy != DROP_OLDEST) return false;
+        }
+        scheduleDrain();
+        return dropped == null;
+    }
+
+    private void recycle(Entry entry) {
+        entry.mTarget = null;
+        entry.mPayload = null;
+        mPool.offer(entry);
+    }
+
+    // 持有锁时调用；队头通常就是消息，生命周期回调很少
+    private Entry removeOldestMessage() {
+        Iterator<Entry> iterator = mEntries.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.isMessage()) {
+                iterator.remove();
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /** 还没投递的消息数 */
+    synchronized int size() {
+        return mMessages;
+    }
+
+    /**
+     * 新连接建立，重新开始计算额度
+     * @return 首次告诉服务端的额度
+     */
+    int onConnected() {
+        mUncredited.set(0);
+        return Math.max(0, mCapacity - size());
+    }
+
+    private void onConsumed(int count) {
+        if (mUncredited.addAndGet(count) < mCreditBatch) return;
+        int credits = mUncredited.getAndSet(0);
+        if (credits > 0 && !mCallback.onCredit(credits)) mUncredited.addAndGet(credits);
+    }
+
+    private void scheduleDrain() {
+        synchronized (this) {
+            if (mScheduled || mEntries.isEmpty()) return;
+            mScheduled = true;
+        }
+        mDispatcher.execute(mDrainRunnable);
+    }
+
+    private void drain() {
+        int consumed = 0;
+        try {
+            for (int i = 0; i < BATCH; i++) {
+                Entry entry;
+                synchronized (this) {
+                    entry = mEntries.poll();
+                    if (entry == null) break;
+                    if (entry.isMessage()) {
+                        mMessages -= entry.mCount;
+                        consumed += entry.mCount;
+                    }
+                }
+                if (!entry.isMessage()) {
+                    entry.mTask.run();
+                    continue;
+                }
+                try {
+                    mCallback.deliver(entry.mKind, entry.mTarget, entry.mPayload, entry.mReceived);
+                } finally {
+                    recycle(entry);
+                }
+            }
+        } finally {
+            synchronized (this) {
+                mScheduled = false;
+            }
+            if (consumed > 0) onConsumed(consumed);
+            // 还有积压（或者监听抛了异常）时重新排队，让出线程给其它任务
+            scheduleDrain();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.tbj.call.ws;
+
+import okio.ByteString;
+
+/**
+ * 重复出现的小消息的驻留缓存：同样内容的 WsMessage.payload() / utf8() 返回同一个 ByteString / String，不再每次拷贝和解码
+ *
+ * - 直接映射：按内容的哈希选一个槽位，槽位里是不可变的 Entry，命中时逐字节比较确认，查找不分配内存
+ * - 同一个槽位连续两次看到同一个哈希才放进去，内容各不相同的消息不会把缓存刷来刷去、每次都多分配一个 Entry
+ * - 只缓存不超过 maxLength 字节的 payload，槽位数固定，内存有上限
+ *
+ * 可能在多个分发线程上同时调用：Entry 的字段都是 final，槽位的读写不加锁，并发时最多是覆盖掉别人刚放进去的 Entry
+ */
+final class WsInternCache {
+
+    static final int DEFAULT_ENTRIES = 1024;
+    static final int DEFAULT_MAX_LENGTH = 256;
+
+    private static final class Entry {
+        final int mHash;
+        final ByteString mBytes;
+        final String mUtf8;
+
+        Entry(int hash, ByteString bytes) {
+            mHash = hash;
+            mBytes = bytes;
+            mUtf8 = bytes.utf8();
+        }
+    }
+
+    private final int mMask;
+    private final int mMaxLength;
+    private final Entry[] mEntries;
+    private final int[] mSeen; // 每个槽位上次未命中的哈希
+
+    WsInternCache(int maxEntries, int maxLength) {
+        int size = Integer.highestOneBit(Math.max(2, maxEntries - 1) << 1);
+        mMask = size - 1;
+        mMaxLength = maxLength;
+        mEntries = new Entry[size];
+        mSeen = new int[size];
+    }
+
+    boolean accepts(int length) {
+        return length <= mMaxLength;
+    }
+
+    /** @return 驻留的 ByteString，没有时返回 null，由调用方自己拷贝 */
+    ByteString bytes(ByteString source, int offset, int length) {
+        Entry entry = lookup(source, offset, length);
+        return entry != null ? entry.mBytes : null;
+    }
+
+    /** @return 驻留的 String，没有时返回 null，由调用方自己解码 */
+    String utf8(ByteString source, int offset, int length) {
+        Entry entry = lookup(source, offset, length);
+        return entry != null ? entry.mUtf8 : null;
+    }
+
+    private Entry lookup(ByteString source, int offset, int length) {
+        int hash = hash(source, offset, length);
+        int slot = (hash ^ hash >>> 16) & mMask;
+        Entry entry = mEntries[slot];
+        if (entry != null && entry.mHash == hash && entry.mBytes.size() == length
+                && source.rangeEquals(offset, entry.mBytes, 0, length)) {
+            return entry;
+        }
+        if (mSeen[slot] != hash) {
+            mSeen[slot] = hash;
+            return null;
+        }
+        entry = new Entry(hash, source.substring(offset, offset + length));
+        mEntries[slot] = entry;
+        return entry;
+    }
+
+    private static int hash(ByteString source, int offset, int length) {
+        int hash = length;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            hash = 31 * hash + source.getByte(i);
+        }
+        return hash;
+    }
+}
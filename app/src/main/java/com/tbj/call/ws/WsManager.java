@@ -1,8 +1,6 @@
 package com.tbj.call.ws;
 
 import android.content.Context;
-import android.os.Handler;
-import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
 import android.util.Log;
@@ -12,12 +10,26 @@ import com.tbj.call.App;
 import com.tbj.call.NetworkUtils;
 import com.tbj.call.R;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.WebSocket;
 import okhttp3.WebSocketListener;
+import okio.Buffer;
 import okio.ByteString;
+import okio.Okio;
+import okio.Source;
 
 /**
  重连机制：
@@ -26,6 +38,7 @@ import okio.ByteString;
  3 不触发服务端执行WebSocket的onclose方法，未知的原因导致，那么需要每隔一段时间发送心跳消息去判断是否保持着连接；
 
  TODO 如果连接在客户端非正常关闭了，那么会不会造成服务端发送的数据的丢失？服务端发送数据之前会不会检查心跳是否存在？服务端检查心跳不存在后，想要连客户端一直连不上，所以客户端需要主动在连接关闭的时候，或者检测心跳包没有的时候，主动打开WebSocket连接
+ 开启 Builder.resume 后：服务端给下行帧编号，重连 onOpen 时带上会话 token 和已收到的序号，服务端只补发缺口，重复的帧由 WsSession 去重
 
 
  多进程、多线程问题
@@ -40,20 +53,54 @@ public class WsManager implements IWsManager {
     private OkHttpClient mOkHttpClient;
     private Request mRequest;
     private WebSocketListener mWebSocketListener;
-    private WebSocket mWebSocket;
+    private volatile WebSocket mWebSocket;
+    private volatile WebSocket mWritable; // onOpen 的握手准备做完才发布给发送线程，见 writableWebSocket
+    private final Object mConnectLock = new Object();
+    private WebSocket mCandidate; // 网络切换时在新网络上预先建立的连接，由 mConnectLock 保护
+    private volatile WebSocket mRetiring; // 网络切换后被替换、还没关闭的旧连接，没开续传时它上面剩下的消息照常投递
+    private volatile long mConnectStartNanos;
 
-    private int mWsStatus = WsStatus.DISCONNECTED;
+    private final WsStateMachine mState = new WsStateMachine(this::onStateChanged);
     private WsStatusListener mWsStatusListener;
+    private boolean mWantsSendResult; // 监听覆写了 onSendResult 才分发，否则每条消息白白多两次分发
 
     private OnNetworkStateChangedListener mNetworkListener;
 
-    private Handler mHandler = new Handler(Looper.getMainLooper());
+    private WsSendQueue mSendQueue;
+    private ReconnectScheduler mReconnectScheduler;
+    private HeartbeatEngine mHeartbeat;
+    private boolean mHeartbeatEnabled; // 需要服务端回 pong，默认关闭
+    private volatile boolean mManualClose;
+
+    private WsDispatcher mDispatcher;
+    private WsInbound mInbound;
+    private boolean mInboundCredits;
+    // 入站缓冲按 DISCONNECT 溢出后置位，被断开的连接上剩下的帧不再接收（也不计入续传序号），新连接 onOpen 时清除
+    private volatile boolean mInboundOverflowed;
+    private InboundBatcher mBatcher;
+    private WsFrameCodec mDecoder; // 只在 OkHttp 读线程上解码
+    private WsFrameCodec mRetiringDecoder; // mRetiring 的读线程用，和当前连接的读线程同时运行
+    private WsReassembler mReassembler;
+    private WsRouter mRouter;
+    private WsCompressor mCompressor;
+    private WsSession mSession;
+    private WsAckTracker mAckTracker;
+    private WsRpc mRpc;
+    private WsStreams mStreams;
+    private final WsMetrics mMetrics = new WsMetrics();
+    private final int mTraceId = WsTracer.newConnectionId();
+    private ScheduledFuture<?> mMetricsDump;
+
+    private final Map<Integer, WsChannel> mChannels = new ConcurrentHashMap<>();
+    private final AtomicInteger mNextChannelId = new AtomicInteger(1);
 
     public WsManager(WsManager.Builder builder) {
         mContext = builder.mContext;
         mWebSocketUrl = builder.mWebSocketUrl;
-        mOkHttpClient = builder.mOkHttpClient;
+        // 没有指定时用共享的 client，所有连接共用线程和连接池
+        mOkHttpClient = builder.mOkHttpClient != null ? builder.mOkHttpClient : WsClients.get();
         mWsStatusListener = builder.mWsStatusListener;
+        mWantsSendResult = overridesSendResult(mWsStatusListener);
         if(mContext == null
                 || TextUtils.isEmpty(mWebSocketUrl)  || !(mWebSocketUrl.startsWith("ws://") || mWebSocketUrl.startsWith("wss://"))
                 || mOkHttpClient == null
@@ -62,43 +109,319 @@ public class WsManager implements IWsManager {
             return;
         }
 
-        App.getWsMap().put(mWebSocketUrl, this);
+        Request.Builder requestBuilder = new Request.Builder().url(mWebSocketUrl);
+        if (builder.mCompressThreshold >= 0) {
+            mCompressor = new WsCompressor(builder.mCompressThreshold);
+            requestBuilder.header(WsCompressor.HEADER, WsCompressor.DEFLATE);
+        }
+        mRequest = requestBuilder.build();
+
+        mDispatcher = WsDispatcher.create(builder.mDispatchPolicy, mWebSocketUrl);
+        mInbound = new WsInbound(mDispatcher, builder.mInboundCapacity, builder.mInboundPolicy, new WsInbound.Callback() {
+            @Override
+            public void deliver(int kind, Object target, Object payload, long receivedNanos) {
+                mMetrics.onDispatched(receivedNanos);
+                switch (kind) {
+                    case WsInbound.KIND_TEXT:
+                        mWsStatusListener.onMessage((String) payload);
+                        break;
+                    case WsInbound.KIND_BYTES:
+                        mWsStatusListener.onMessage((ByteString) payload);
+                        break;
+                    case WsInbound.KIND_BATCH:
+                        @SuppressWarnings("unchecked")
+                        List<String> texts = (List<String>) payload;
+                        mWsStatusListener.onMessages(texts);
+                        break;
+                    case WsInbound.KIND_MESSAGE:
+                        try {
+                            mWsStatusListener.onMessage((WsMessage) payload);
+                        } finally {
+                            mDecoder.recycle((WsMessage) payload);
+                        }
+                        break;
+                    case WsInbound.KIND_ROUTED:
+                        try {
+                            for (WsRouter.Subscriber subscriber : (WsRouter.Subscriber[]) target) {
+                                subscriber.onMessage((WsMessage) payload);
+                            }
+                        } finally {
+                            mDecoder.recycle((WsMessage) payload);
+                        }
+                        break;
+                    case WsInbound.KIND_CHANNEL_MESSAGE:
+                        WsChannel channel = (WsChannel) target;
+                        try {
+                            channel.getListener().onMessage(channel, (WsMessage) payload);
+                        } finally {
+                            mDecoder.recycle((WsMessage) payload);
+                        }
+                        break;
+                }
+            }
+
+            @Override
+            public void drop(int kind, Object payload) {
+                if (kind != WsInbound.KIND_TEXT && kind != WsInbound.KIND_BYTES && kind != WsInbound.KIND_BATCH) {
+                    mDecoder.recycle((WsMessage) payload);
+                }
+            }
+
+            @Override
+            public void onOverflow(int policy) {
+                mMetrics.onInboundDropped();
+                WsTracer.trace(WsTracer.LEVEL_INFO, WsTracer.EVENT_INBOUND_OVERFLOW, mTraceId, policy);
+                if (policy == WsInbound.DISCONNECT) {
+                    // 走 onFailure 重连，开启 resume 时服务端从溢出的那一帧开始补发
+                    mInboundOverflowed = true;
+                    WebSocket webSocket = mWebSocket;
+                    if (webSocket != null) webSocket.cancel();
+                }
+            }
+
+            @Override
+            public boolean onCredit(int credits) {
+                if (!mInboundCredits) return true;
+                // 和 onOpen 的首次额度一样直接写给 OkHttp，不经过发送队列，断线期间的额度不会留到下一个连接
+                WebSocket webSocket = writableWebSocket();
+                if (webSocket == null) return false;
+                webSocket.send(WsFrameCodec.encodeFrame(WsFrameCodec.TYPE_FLOW_CREDIT, 0, 0, creditPayload(credits)));
+                return true;
+            }
+        });
+        if (builder.mBinaryCodec) {
+            mInboundCredits = builder.mInboundCredits;
+            WsInternCache intern = builder.mInternEntries > 0
+                    ? new WsInternCache(builder.mInternEntries, builder.mInternMaxLength) : null;
+            mDecoder = new WsFrameCodec(intern);
+            mRetiringDecoder = new WsFrameCodec(intern);
+            mReassembler = new WsReassembler();
+            mRouter = new WsRouter();
+        }
+        if (builder.mResume) mSession = new WsSession();
+        if (mDecoder != null) {
+            mRpc = new WsRpc(WsTimerWheel.get(), mDispatcher, new WsRpc.Sender() {
+                @Override
+                public boolean isConnected() {
+                    return writableWebSocket() != null;
+                }
+
+                @Override
+                public boolean send(WsFrame frame) {
+                    return mSendQueue.enqueue(frame);
+                }
+            });
+        }
+        if (mDecoder != null) {
+            mStreams = new WsStreams(mWebSocketUrl, mDispatcher, builder.mStreamHandler, builder.mStreamChunkSize,
+                    builder.mStreamWindow, new WsStreams.Sender() {
+                @Override
+                public boolean isConnected() {
+                    return WsManager.this.isConnected();
+                }
+
+                @Override
+                public boolean send(WsFrame frame) {
+                    return mSendQueue.enqueue(frame);
+                }
+            });
+        }
+        if (builder.mBatchWindow > 0) {
+            mBatcher = new InboundBatcher(WsScheduler.get(), builder.mBatchWindow, builder.mBatchMaxCount,
+                    builder.mKeySelector, (texts, receivedNanos) -> mInbound.offerBatch(texts, receivedNanos));
+        }
+
+        WsOutbox outbox = builder.mOutboxCapacity > 0
+                ? WsOutbox.open(mContext.getFilesDir(), mWebSocketUrl, builder.mOutboxCapacity) : null;
+        mSendQueue = new WsSendQueue(mWebSocketUrl, builder.mSendQueueCapacity, builder.mHighWatermark,
+                builder.mLowWatermark, builder.mPriorityScheduling, builder.mPriorityWeights, builder.mFragmentSize,
+                outbox, mCompressor, new WsSendQueue.Callback() {
+            @Override
+            public WebSocket writableWebSocket() {
+                return WsManager.this.writableWebSocket();
+            }
+
+            @Override
+            public void onSendResult(int result, WsFrame frame) {
+                if (result == WsSendResult.FLUSHED) {
+                    mMetrics.onSent(frame);
+                    WsTracer.trace(WsTracer.LEVEL_DEBUG, WsTracer.EVENT_SENT, mTraceId, frame.size(), frame.getType());
+                } else if (result == WsSendResult.DROPPED) {
+                    mMetrics.onDropped();
+                    WsTracer.trace(WsTracer.LEVEL_INFO, WsTracer.EVENT_DROPPED, mTraceId, frame.size());
+                }
+                if (mAckTracker != null && frame.isReliable()) {
+                    if (result == WsSendResult.FLUSHED || result == WsSendResult.FAILED) mAckTracker.onWritten(frame);
+                    // 可靠消息被丢弃或写出失败都会按超时重发，最终结果看 ACKED / FAILED
+                    if (result == WsSendResult.DROPPED || result == WsSendResult.FAILED) return;
+                }
+                if (mWantsSendResult) dispatch(() -> mWsStatusListener.onSendResult(result, frame));
+            }
+        });
+
+        if (builder.mReliableWindow > 0) {
+            mAckTracker = new WsAckTracker(WsTimerWheel.get(), builder.mReliableWindow,
+                    builder.mRetransmitTimeout, builder.mMaxAttempts, new WsAckTracker.Callback() {
+                @Override
+                public boolean isConnected() {
+                    return WsManager.this.isConnected();
+                }
+
+                @Override
+                public boolean enqueue(WsFrame frame) {
+                    return mSendQueue.enqueue(frame);
+                }
+
+                @Override
+                public void onAcked(WsFrame frame) {
+                    if (mWantsSendResult) dispatch(() -> mWsStatusListener.onSendResult(WsSendResult.ACKED, frame));
+                }
+
+                @Override
+                public void onGaveUp(WsFrame frame) {
+                    Log.w(TAG, "client give up " + frame);
+                    if (mWantsSendResult) dispatch(() -> mWsStatusListener.onSendResult(WsSendResult.FAILED, frame));
+                }
+            });
+        }
+
+        mReconnectScheduler = new ReconnectScheduler(WsScheduler.get(),
+                builder.mReconnectBaseDelay, builder.mReconnectMaxDelay, this::reconnect);
+
+        mHeartbeatEnabled = builder.mHeartbeat;
+        mHeartbeat = new HeartbeatEngine(WsScheduler.get(), builder.mHeartbeatMinInterval,
+                builder.mHeartbeatMaxInterval, builder.mPongTimeout, builder.mMaxMissedPongs,
+                new HeartbeatEngine.Callback() {
+            @Override
+            public boolean sendPing(String frame) {
+                WebSocket webSocket = mWebSocket;
+                return isConnected() && webSocket != null && webSocket.send(frame);
+            }
+
+            @Override
+            public void onConnectionDead(int missed) {
+                Log.i(TAG, "client heartbeat missed " + missed + " pongs, connection dead");
+                WsTracer.trace(WsTracer.LEVEL_INFO, WsTracer.EVENT_HEARTBEAT_DEAD, mTraceId, missed);
+                WebSocket webSocket = mWebSocket;
+                scheduleReconnect(WsMetricsSnapshot.CAUSE_HEARTBEAT);
+                // 链路已经不通，close 握手不会完成，直接 cancel
+                if (webSocket != null) webSocket.cancel();
+            }
 
-        mRequest = new Request.Builder().url(mWebSocketUrl).build();
+            @Override
+            public void onRtt(long rttNanos) {
+                mMetrics.onRtt(rttNanos);
+            }
+        });
 
         mWebSocketListener = new WebSocketListener() {
             @Override
             public void onOpen(WebSocket webSocket, final Response response) {
-                Log.i(TAG, "client onOpen");
-                mWebSocket = webSocket;
-                setCurrentStatus(WsStatus.CONNECTED);
-                runOnUIThread(() -> mWsStatusListener.onOpen(response));
+                long connectStartNanos = mConnectStartNanos;
+                WebSocket previous = promoteCandidate(webSocket);
+                boolean migrated = previous != null;
+                // 已经被替换的连接，或者连接期间调用了 stopConnect，直接关掉；网络切换时状态一直是 CONNECTED
+                if (!isCurrent(webSocket) || (!(migrated && getCurrentStatus() == WsStatus.CONNECTED)
+                        && !mState.transition(WsStatus.CONNECTING, WsStatus.CONNECTED))) {
+                    webSocket.close(ResponseState.STATE_CLOSE_NORMAL, "client close");
+                    return;
+                }
+                long connectNanos = mMetrics.onOpen(connectStartNanos);
+                Log.i(TAG, "client onOpen in " + TimeUnit.NANOSECONDS.toMillis(connectNanos) + "ms");
+                WsTracer.trace(WsTracer.LEVEL_INFO, WsTracer.EVENT_OPEN, mTraceId, TimeUnit.NANOSECONDS.toMicros(connectNanos));
+                if (migrated) {
+                    Log.i(TAG, "client switched to new network");
+                    mMetrics.onMigrated();
+                    mReconnectScheduler.cancel();
+                    previous.close(ResponseState.STATE_CLOSE_NORMAL, "client network switched");
+                }
+                if (mCompressor != null) mCompressor.onOpen(response.header(WsCompressor.HEADER));
+                if (mReassembler != null) mReassembler.clear();
+                mInboundOverflowed = false;
+                // 流只属于建立它的连接，网络切换后旧连接上的传输也要失败
+                if (mStreams != null) mStreams.onDisconnected();
+                // 续传请求排在所有帧之前
+                if (mSession != null) {
+                    ByteString resume = mSession.resumeFrame();
+                    if (resume != null) webSocket.send(resume);
+                }
+                int credits = mInbound.onConnected();
+                if (mInboundCredits) {
+                    webSocket.send(WsFrameCodec.encodeFrame(WsFrameCodec.TYPE_FLOW_CREDIT, 0, 0, creditPayload(credits)));
+                }
+                // 新连接上重新声明已打开的通道，然后才放开发送线程，续传、额度和通道声明都排在数据之前；
+                // 和 openChannel 用同一把锁，期间新开的通道要么在这里声明，要么由 openChannel 自己声明
+                synchronized (mChannels) {
+                    for (WsChannel channel : mChannels.values()) {
+                        announceChannel(webSocket, channel);
+                    }
+                    mWritable = webSocket;
+                }
+                mReconnectScheduler.reset();
+                if (mHeartbeatEnabled) mHeartbeat.start();
+                if (mAckTracker != null) mAckTracker.onConnected();
+                mSendQueue.flush();
+                dispatch(() -> mWsStatusListener.onOpen(response));
             }
 
             @Override
             public void onMessage(WebSocket webSocket, final String text) {
-                Log.i(TAG, "client onMessage " + text);
-                int i = Integer.valueOf(text);
-                if(0 == i%3){
+                if (webSocket != mWebSocket) {
+                    // 网络切换后旧连接上还没读完的消息，心跳和命令只看当前连接
+                    if (webSocket == mRetiring) {
+                        mMetrics.onReceived(text.length());
+                        offerText(text);
+                    }
+                    return;
+                }
+                // 没开心跳时 "pong:" 开头的文本也是业务消息
+                if (mHeartbeatEnabled && mHeartbeat.onMessage(text)) return;
+                if (mInboundOverflowed) return;
+                mMetrics.onReceived(text.length());
+                WsTracer.trace(WsTracer.LEVEL_DEBUG, WsTracer.EVENT_TEXT_IN, mTraceId, text.length());
+                int i = parseCommand(text);
+                if(0 == i%3 && !mManualClose){
                     Log.i(TAG, "client want reconnect");
-                    setCurrentStatus(WsStatus.DISCONNECTED);
-                    reconnect();
+                    scheduleReconnect(WsMetricsSnapshot.CAUSE_SERVER_REQUEST);
                 }
-                runOnUIThread(() -> mWsStatusListener.onMessage(text));
+                offerText(text);
             }
 
             @Override
             public void onMessage(WebSocket webSocket, final ByteString bytes) {
-                runOnUIThread(() -> mWsStatusListener.onMessage(bytes));
+                if (webSocket != mWebSocket) {
+                    if (webSocket == mRetiring) onRetiringMessage(bytes);
+                    return;
+                }
+                mHeartbeat.markAlive();
+                if (mInboundOverflowed) return;
+                mMetrics.onReceived(bytes.size());
+                WsTracer.trace(WsTracer.LEVEL_DEBUG, WsTracer.EVENT_BINARY_IN, mTraceId, bytes.size());
+                if (mDecoder != null) {
+                    if (!mDecoder.decode(bytes, mMessageConsumer)) {
+                        Log.w(TAG, "client drop malformed frame, size " + bytes.size());
+                    }
+                    return;
+                }
+                mInbound.offerMessage(WsInbound.KIND_BYTES, null, bytes, System.nanoTime());
             }
 
             // 当服务端指示不再传输传入消息时调用。
             @Override
             public void onClosing(WebSocket webSocket, final int code, final String reason) {
                 Log.i(TAG, "client onClosing code " + code + " msg " + reason);
-                setCurrentStatus(WsStatus.DISCONNECTED);
-                reconnect();
-                runOnUIThread(() -> mWsStatusListener.onClosing(code, reason));
+                WsTracer.trace(WsTracer.LEVEL_INFO, WsTracer.EVENT_CLOSING, mTraceId, code);
+                // 已经被替换掉的旧连接，不再处理
+                if (!isCurrent(webSocket)) {
+                    discardStale(webSocket);
+                    return;
+                }
+                mHeartbeat.stop();
+                // stopConnect 发起的关闭还要等 onClosed，这里不改变状态
+                if (!mManualClose) scheduleReconnect(WsMetricsSnapshot.CAUSE_SERVER_CLOSE);
+                flushBatch();
+                if (mStreams != null) mStreams.onDisconnected();
+                dispatch(() -> mWsStatusListener.onClosing(code, reason));
                 // 客户端通知服务端可以完全关闭链接了 这样服务端也要重新启动么？
 //                mWebSocket.close(code, reason);
             }
@@ -107,61 +430,318 @@ public class WsManager implements IWsManager {
             @Override
             public void onClosed(WebSocket webSocket, final int code, final String reason) {
                 Log.i(TAG, "client onClosed code " + code + " msg " + reason);
+                WsTracer.trace(WsTracer.LEVEL_INFO, WsTracer.EVENT_CLOSED, mTraceId, code);
                 // 服务器端发送的关闭，如果非正常关闭，那么会丢失数据吧
                 // code == 1000，正常关闭，但在该项目下，应该不会服务器主动关闭
-                setCurrentStatus(WsStatus.DISCONNECTED);
-                reconnect();
-                runOnUIThread(() -> mWsStatusListener.onClosed(code, reason));
+                if (!isCurrent(webSocket)) {
+                    discardStale(webSocket);
+                    return;
+                }
+                mHeartbeat.stop();
+                // stopConnect 发起的关闭到这里才算完成，由 scheduleReconnect 进入 CLOSE
+                scheduleReconnect(WsMetricsSnapshot.CAUSE_SERVER_CLOSE);
+                flushBatch();
+                if (mStreams != null) mStreams.onDisconnected();
+                dispatch(() -> mWsStatusListener.onClosed(code, reason));
             }
 
             // 由于读取或写入传出和传入消息的错误而关闭Web套接字时调用可能已丢失。
             @Override
             public void onFailure(WebSocket webSocket, final Throwable t, final Response response) {
                 Log.i(TAG, "client onFailure throwable " + t.toString() + " response " + response);
-                // 服务器端发送的错误
-//                setCurrentStatus(WsStatus.DISCONNECTED);
-//                reconnect();
-//                runOnUIThread(() -> mWsStatusListener.onFailure(t, response));
+                WsTracer.trace(WsTracer.LEVEL_INFO, WsTracer.EVENT_FAILURE, mTraceId, response != null ? response.code() : 0);
+                // 服务器端发送的错误，或者连接建立失败，按退避间隔继续重连；新网络上的预连接失败时继续用旧连接
+                if (!isCurrent(webSocket)) {
+                    discardStale(webSocket);
+                    return;
+                }
+                mHeartbeat.stop();
+                scheduleReconnect(WsMetricsSnapshot.CAUSE_FAILURE);
+                flushBatch();
+                if (mStreams != null) mStreams.onDisconnected();
+                dispatch(() -> mWsStatusListener.onFailure(t, response));
             }
         };
 
         mNetworkListener = type -> {
-            setCurrentStatus(WsStatus.DISCONNECTED);
-            switch (type) {
-                case NetworkUtils.TYPE_MOBILE:
-                case NetworkUtils.TYPE_WIFI:
-                    reconnect();
-                    break;
-                case NetworkUtils.NO_NET:
-                    Toast.makeText(mContext, R.string.error_no_net, Toast.LENGTH_SHORT).show();
-                    break;
+            // 已经由 ConnectivityMonitor 防抖、去重，到这里的都是真正的网络变化
+            mHeartbeat.onNetworkChanged(type);
+            if (mManualClose) return;
+            if (NetworkUtils.NO_NET.equals(type)) {
+                // 不主动断开：网络很快恢复时旧连接可能还能用，真的断了由 onFailure / 心跳发现
+                return;
+            }
+            if (getCurrentStatus() == WsStatus.CONNECTED) {
+                // make-before-break：先在新网络上建连，建好后再关旧连接，切换期间旧连接照常收发
+                openCandidate();
+            } else {
+                // 不用再等退避间隔；已经在等待重连时直接提前
+                if (mState.moveTo(WsStatus.RECONNECTING) >= 0) mMetrics.onReconnectScheduled(WsMetricsSnapshot.CAUSE_NETWORK);
+                if (getCurrentStatus() == WsStatus.RECONNECTING) mReconnectScheduler.scheduleNow();
             }
         };
+
+        if (builder.mMetricsInterval > 0) {
+            mMetricsDump = WsScheduler.get().scheduleWithFixedDelay(() -> Log.i(TAG, "client " + getMetrics()),
+                    builder.mMetricsInterval, builder.mMetricsInterval, TimeUnit.MILLISECONDS);
+        }
     }
 
-    // TODO
-    private synchronized void reconnect() {
-        stopConnect();
-        switch (getCurrentStatus()) {
-            case WsStatus.DISCONNECTED:
-                startConnect();
-                break;
-            case WsStatus.CONNECTED:
+    // 连接断开：只有从其它状态进入 RECONNECTING 的一方安排重连，重复触发在这里合并；stopConnect 之后进入 CLOSE
+    private void scheduleReconnect(int cause) {
+        if (mManualClose) {
+            mState.moveTo(WsStatus.CLOSE);
+            return;
+        }
+        if (mState.moveTo(WsStatus.RECONNECTING) < 0) return;
+        mMetrics.onReconnectScheduled(cause);
+        long delay = mReconnectScheduler.schedule();
+        if (delay >= 0) Log.i(TAG, "client reconnect in " + delay + "ms");
+        WsTracer.trace(WsTracer.LEVEL_INFO, WsTracer.EVENT_RECONNECT, mTraceId, cause, delay);
+    }
+
+    // 在 ws-scheduler 线程执行，同一时间只会有一个
+    private void reconnect() {
+        if (mManualClose || !mState.transition(WsStatus.RECONNECTING, WsStatus.CONNECTING)) return;
+        Log.i(TAG, "client reconnect attempt " + mReconnectScheduler.getAttempts());
+        mMetrics.onReconnect();
+        WsTracer.trace(WsTracer.LEVEL_INFO, WsTracer.EVENT_CONNECT, mTraceId, 1);
+        dispatch(() -> mWsStatusListener.onReconnect());
+        connect();
+    }
+
+    private void onStateChanged(int from, int to) {
+        Log.i(TAG, "client state " + WsStatus.name(from) + " -> " + WsStatus.name(to));
+        WsTracer.trace(WsTracer.LEVEL_INFO, WsTracer.EVENT_STATE, mTraceId, from, to);
+        dispatch(() -> mWsStatusListener.onStateChanged(from, to));
+    }
+
+    private final WsFrameCodec.Consumer mMessageConsumer = message -> {
+        // 同一条 WebSocket 消息里溢出那一帧之后的帧，不能再计入续传序号
+        if (mInboundOverflowed) {
+            mDecoder.recycle(message);
+            return;
+        }
+        long received = System.nanoTime();
+        WsTracer.trace(WsTracer.LEVEL_DEBUG, WsTracer.EVENT_FRAME_IN, mTraceId, message.size(), message.type());
+        if ((message.flags() & WsCompressor.FLAG_DEFLATE) != 0 && !inflate(message)) return;
+        // 去重放在解压之后，重复的压缩帧也要经过 Inflater，压缩上下文才不会错乱
+        if (mSession != null && !mSession.accept(message.seq())) {
+            mDecoder.recycle(message);
+            return;
+        }
+        // 分片不压缩，在去重之后拼接，续传补发的重复分片不会拼进去
+        if (!mReassembler.accept(message)) {
+            mDecoder.recycle(message);
+            return;
+        }
+        deliverFrame(message, received);
+    };
+
+    /**
+     * 网络切换后旧连接上还没读完的二进制消息，在旧连接的读线程上调用
+     *
+     * 解压上下文和分片缓存已经交给新连接，依赖它们的帧只能丢弃；控制帧也不处理，
+     * 丢了的 ACK 由可靠发送超时重发
+     */
+    private void onRetiringMessage(ByteString bytes) {
+        mMetrics.onReceived(bytes.size());
+        if (mRetiringDecoder == null) {
+            mInbound.offerMessage(WsInbound.KIND_BYTES, null, bytes, System.nanoTime());
+            return;
+        }
+        mRetiringDecoder.decode(bytes, mRetiringConsumer);
+    }
 
-                break;
+    private final WsFrameCodec.Consumer mRetiringConsumer = message -> {
+        if ((message.flags() & WsCompressor.FLAG_DEFLATE) != 0 || message.mFragment >= 0
+                || message.type() > WsFrameCodec.TYPE_USER_MAX) {
+            Log.w(TAG, "client drop frame from replaced connection, type " + message.type());
+            mDecoder.recycle(message);
+            return;
+        }
+        deliverFrame(message, System.nanoTime());
+    };
+
+    // 已经解压、拼好的一帧，按通道、控制帧、路由分发
+    private void deliverFrame(WsMessage message, long received) {
+        if (message.channel() != 0) {
+            onChannelMessage(message, received);
+            return;
+        }
+        if (message.type() > WsFrameCodec.TYPE_USER_MAX) {
+            if (message.type() == WsFrameCodec.TYPE_SESSION && mSession != null) {
+                boolean resumed = mSession.onSession(message);
+                Log.i(TAG, "client session " + (resumed ? "resumed" : "started") + " at seq " + mSession.lastSeq());
+            } else if (message.type() == WsFrameCodec.TYPE_ACK && mAckTracker != null) {
+                mAckTracker.onAck(message);
+            } else if (message.type() == WsFrameCodec.TYPE_RPC_RESPONSE) {
+                mRpc.onResponse(message);
+            } else if (message.type() >= WsFrameCodec.TYPE_STREAM_OPEN && message.type() <= WsFrameCodec.TYPE_STREAM_CREDIT) {
+                mStreams.onFrame(message);
+            }
+            mDecoder.recycle(message);
+            return;
+        }
+        WsRouter.Subscriber[] subscribers = mRouter.route(message);
+        if (subscribers != null) {
+            offerFrame(WsInbound.KIND_ROUTED, subscribers, message, received);
+        } else if (message.hasTopic()) {
+            // 没有人订阅的 topic 不投递，payload 不会被解码
+            mDecoder.recycle(message);
+        } else {
+            offerFrame(WsInbound.KIND_MESSAGE, null, message, received);
+        }
+    }
+
+    private void offerText(String text) {
+        if (mBatcher != null) {
+            mBatcher.add(text, System.nanoTime());
+        } else {
+            mInbound.offerMessage(WsInbound.KIND_TEXT, null, text, System.nanoTime());
         }
     }
 
-    private void runOnUIThread(OnUIThreadListener todo){
-        if(Looper.myLooper() != Looper.getMainLooper()){
-            mHandler.post(todo::onUIThread);
-        }else{
-            todo.onUIThread();
+    private void offerFrame(int kind, Object target, WsMessage message, long received) {
+        int seq = message.seq(); // 溢出时 message 已经被回收
+        if (!mInbound.offerMessage(kind, target, message, received) && mInboundOverflowed && mSession != null) {
+            mSession.reject(seq);
         }
     }
 
-    interface OnUIThreadListener {
-        void onUIThread();
+    private void onChannelMessage(WsMessage message, long received) {
+        WsChannel channel = mChannels.get(message.channel());
+        if (channel == null) {
+            mDecoder.recycle(message);
+            return;
+        }
+        if (message.type() == WsFrameCodec.TYPE_CHANNEL_CLOSE) {
+            mDecoder.recycle(message);
+            removeChannel(channel);
+            return;
+        }
+        if (message.type() > WsFrameCodec.TYPE_USER_MAX) {
+            mDecoder.recycle(message);
+            return;
+        }
+        offerFrame(WsInbound.KIND_CHANNEL_MESSAGE, channel, message, received);
+    }
+
+    /**
+     * 打开一个逻辑通道，同名通道已经打开时直接返回它；需要开启 Builder.binaryCodec
+     */
+    public WsChannel openChannel(@NonNull String name, @NonNull WsChannel.Listener listener) {
+        if (mDecoder == null) throw new IllegalStateException("openChannel requires Builder.binaryCodec(true)");
+        WsChannel channel;
+        synchronized (mChannels) {
+            for (WsChannel opened : mChannels.values()) {
+                if (opened.getName().equals(name)) return opened;
+            }
+            channel = new WsChannel(this, mNextChannelId.getAndIncrement(), name, listener);
+            mSendQueue.addLane(channel.getId());
+            mChannels.put(channel.getId(), channel);
+            // 还不能写时不用声明，onOpen 会统一声明；服务端需要把重复的 OPEN 当作幂等处理
+            WebSocket webSocket = writableWebSocket();
+            if (webSocket != null) announceChannel(webSocket, channel);
+        }
+        return channel;
+    }
+
+    boolean sendOnChannel(int channel, int type, ByteString payload, int priority) {
+        return mSendQueue.enqueue(WsFrame.message(channel, type, payload, priority));
+    }
+
+    void closeChannel(WsChannel channel) {
+        if (!removeChannel(channel)) return;
+        WebSocket webSocket = writableWebSocket();
+        if (webSocket != null) {
+            webSocket.send(WsFrameCodec.encodeFrame(WsFrameCodec.TYPE_CHANNEL_CLOSE, 0, channel.getId(), ByteString.EMPTY));
+        }
+    }
+
+    private boolean removeChannel(WsChannel channel) {
+        if (mChannels.remove(channel.getId()) == null) return false;
+        channel.markClosed();
+        mSendQueue.removeLane(channel.getId());
+        dispatch(() -> channel.getListener().onClosed(channel));
+        return true;
+    }
+
+    // 控制帧直接写给 OkHttp，不经过发送队列，保证排在该通道的数据之前
+    private void announceChannel(WebSocket webSocket, WsChannel channel) {
+        webSocket.send(WsFrameCodec.encodeFrame(WsFrameCodec.TYPE_CHANNEL_OPEN, 0, channel.getId(),
+                ByteString.encodeUtf8(channel.getName())));
+    }
+
+    private boolean inflate(WsMessage message) {
+        try {
+            ByteString inflated = mCompressor == null ? null : mCompressor.inflate(message);
+            if (inflated == null) throw new DataFormatException("compression not negotiated");
+            message.set(message.type(), message.flags() & ~(WsCompressor.FLAG_DEFLATE | WsCompressor.FLAG_DEFLATE_RESET),
+                    message.channel(), inflated, 0, inflated.size());
+            return true;
+        } catch (DataFormatException e) {
+            // 压缩上下文已经错乱，只能重建连接
+            Log.w(TAG, "client inflate failed, reconnect", e);
+            mDecoder.recycle(message);
+            WebSocket webSocket = mWebSocket;
+            if (webSocket != null) webSocket.cancel();
+            return false;
+        }
+    }
+
+    /**
+     * 按类型或 topic 订阅主通道的二进制帧，见 WsRouter；需要开启 Builder.binaryCodec
+     */
+    public WsRouter getRouter() {
+        if (mRouter == null) throw new IllegalStateException("getRouter requires Builder.binaryCodec(true)");
+        return mRouter;
+    }
+
+    /**
+     * 压缩统计，没有开启 Builder.compression 时返回 null
+     */
+    public WsCompressionStats getCompressionStats() {
+        return mCompressor != null ? mCompressor.stats() : null;
+    }
+
+    private static boolean overridesSendResult(WsStatusListener listener) {
+        if (listener == null) return false;
+        try {
+            return listener.getClass().getMethod("onSendResult", int.class, WsFrame.class).getDeclaringClass()
+                    != WsStatusListener.class;
+        } catch (NoSuchMethodException e) {
+            return true;
+        }
+    }
+
+    // 服务端用数字文本要求重连（取模为 0），其它文本返回 -1；不用 Integer.valueOf，非数字文本不抛异常
+    private static int parseCommand(String text) {
+        int length = text.length();
+        if (length == 0 || length > 9) return -1;
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private void flushBatch() {
+        if (mBatcher != null) mBatcher.flush();
+    }
+
+    // 按 Builder.dispatchPolicy 分发监听回调
+    // 生命周期回调和消息一起经过 WsInbound，保持顺序
+    private void dispatch(Runnable todo) {
+        mInbound.execute(todo);
+    }
+
+    private static ByteString creditPayload(int credits) {
+        Buffer buffer = new Buffer();
+        WsFrameCodec.writeVarint(buffer, credits);
+        return buffer.readByteString();
     }
 
     public OnNetworkStateChangedListener getNetworkListener(){
@@ -172,48 +752,281 @@ public class WsManager implements IWsManager {
         void onNetStateChanged(String type);
     }
 
+    /**
+     * latest-wins 合并模式下提取消息的 key（例如消息类型），同一窗口内相同 key 只投递最新一条
+     */
+    public interface MessageKeySelector {
+        Object keyOf(String text);
+    }
+
     @Override
     public WebSocket getWebSocket() {
         return mWebSocket;
     }
 
+    public String getUrl() {
+        return mWebSocketUrl;
+    }
+
     @Override
     public void startConnect() {
-        Log.i(TAG, "client newWebSocket");
-        mOkHttpClient.newWebSocket(mRequest, mWebSocketListener);
+        WsRegistry.register(this);
+        mManualClose = false;
+        // 等待中的重连由这次连接代替；已经在连接或已连接时什么也不做
+        mReconnectScheduler.cancel();
+        if (mState.moveTo(WsStatus.CONNECTING) < 0) return;
+        WsTracer.trace(WsTracer.LEVEL_INFO, WsTracer.EVENT_CONNECT, mTraceId, 0);
+        connect();
     }
 
     @Override
     public void stopConnect() {
+        mManualClose = true;
+        mReconnectScheduler.cancel();
+        mHeartbeat.stop();
+        discardCandidate(null);
+        // 连接中或已连接进入 CLOSING，等 onClosed / onFailure 进入 CLOSE；等待重连的没有连接要关，直接进入 CLOSE
+        if (mState.moveTo(WsStatus.CLOSING) < 0) mState.transition(WsStatus.RECONNECTING, WsStatus.CLOSE);
+        closeWebSocket();
+        WsRegistry.unregister(this);
+    }
+
+    /**
+     * 彻底释放：断开连接，结束发送线程和独占的回调线程，关闭离线发件箱；之后不能再使用
+     */
+    public void release() {
+        stopConnect();
+        if (mMetricsDump != null) mMetricsDump.cancel(false);
+        if (mAckTracker != null) mAckTracker.shutdown();
+        if (mRpc != null) mRpc.shutdown();
+        if (mStreams != null) mStreams.shutdown();
+        mSendQueue.shutdown();
+        mDispatcher.shutdown();
+    }
+
+    // 只有迁移到 CONNECTING 成功的一方会走到这里
+    private void connect() {
+        Log.i(TAG, "client newWebSocket");
+        mConnectStartNanos = System.nanoTime();
+        WebSocket previous;
+        synchronized (mConnectLock) {
+            discardCandidate(null);
+            previous = mWebSocket;
+            // 记下新连接，旧连接之后的回调都会被忽略
+            mWebSocket = mOkHttpClient.newWebSocket(mRequest, mWebSocketListener);
+        }
+        if (previous != null) previous.close(ResponseState.STATE_CLOSE_NORMAL, "client reconnect");
+    }
+
+    private void openCandidate() {
+        synchronized (mConnectLock) {
+            if (mCandidate != null) mCandidate.cancel();
+            Log.i(TAG, "client newWebSocket on new network");
+            WsTracer.trace(WsTracer.LEVEL_INFO, WsTracer.EVENT_CONNECT, mTraceId, 2);
+            mConnectStartNanos = System.nanoTime();
+            mCandidate = mOkHttpClient.newWebSocket(mRequest, mWebSocketListener);
+        }
+    }
+
+    /**
+     * 预连接建好了：替换掉旧连接。切换期间旧连接已经断开、正在等待重连时，用它代替那次重连
+     * @return 被替换的旧连接，webSocket 不是预连接或者已经不需要时返回 null
+     */
+    private WebSocket promoteCandidate(WebSocket webSocket) {
+        synchronized (mConnectLock) {
+            if (webSocket != mCandidate) return null;
+            mCandidate = null;
+            if (getCurrentStatus() != WsStatus.CONNECTED
+                    && !mState.transition(WsStatus.RECONNECTING, WsStatus.CONNECTING)) {
+                return null;
+            }
+            WebSocket previous = mWebSocket;
+            // 替换之后 writableWebSocket 返回 null，新连接的 onOpen 做完握手准备之前发送线程不会写它
+            mWebSocket = webSocket;
+            // 开启续传时旧连接上剩下的消息由服务端补发，不用再收，也避免和补发的帧重复
+            mRetiring = mSession == null ? previous : null;
+            return previous;
+        }
+    }
+
+    // 不是当前连接的关闭回调：可能是预连接，也可能是被替换的旧连接
+    private void discardStale(WebSocket webSocket) {
+        discardCandidate(webSocket);
+        if (webSocket == mRetiring) mRetiring = null;
+    }
+
+    /** 丢掉预连接，webSocket 为 null 时不管是哪个都丢掉 */
+    private void discardCandidate(WebSocket webSocket) {
+        synchronized (mConnectLock) {
+            if (mCandidate == null || webSocket != null && webSocket != mCandidate) return;
+            if (webSocket == null) mCandidate.cancel();
+            mCandidate = null;
+        }
+    }
+
+    /**
+     * 发送线程和直接写控制帧的地方用：只有 onOpen 做完握手准备（重置压缩上下文、续传、通道声明）之后才返回当前连接，
+     * 建连过程中和网络切换替换 mWebSocket 之后、新连接的 onOpen 做完之前都返回 null
+     */
+    private WebSocket writableWebSocket() {
+        WebSocket webSocket = mWritable;
+        return webSocket != null && webSocket == mWebSocket && isConnected() ? webSocket : null;
+    }
+
+    // 新连接的回调可能在 newWebSocket 返回之前到达，加锁保证看到的是赋值之后的 mWebSocket
+    private boolean isCurrent(WebSocket webSocket) {
+        synchronized (mConnectLock) {
+            return webSocket == mWebSocket;
+        }
+    }
+
+    private void closeWebSocket() {
+        WebSocket webSocket = mWebSocket;
+        if (webSocket == null) return;
         // 在关闭之前，所有已经在队列中的消息将被传送完毕
-        mWebSocket.close(1000, "client close");
+        webSocket.close(ResponseState.STATE_CLOSE_NORMAL, "client close");
         // 在关闭之前，所有已经在队列中的消息将被丢弃
-//        mWebSocket.cancel();
+//        webSocket.cancel();
+    }
+
+    /**
+     * 心跳 RTT 的百分位值（毫秒），例如 getRttMillis(50) / getRttMillis(99)，还没有样本（或没开启 Builder.heartbeat）时返回 -1
+     */
+    public long getRttMillis(double percentile) {
+        return mHeartbeat.getRttMillis(percentile);
+    }
+
+    /**
+     * 连接、收发、队列和延迟的指标快照，可以随时在任意线程调用
+     */
+    public WsMetricsSnapshot getMetrics() {
+        WebSocket webSocket = mWebSocket;
+        int[] depths = new int[WsPriority.COUNT];
+        for (int i = 0; i < depths.length; i++) {
+            depths[i] = mSendQueue.depth(i);
+        }
+        return mMetrics.snapshot(getCurrentStatus(), mSendQueue.size(), depths, mInbound.size(),
+                webSocket != null ? webSocket.queueSize() : 0,
+                mAckTracker != null ? mAckTracker.inFlightCount() : 0);
+    }
+
+    /**
+     * 取快照后清零延迟直方图，定期导出时每次得到的是这段时间的分布；计数器不清零
+     */
+    public WsMetricsSnapshot getMetricsAndReset() {
+        WsMetricsSnapshot snapshot = getMetrics();
+        mMetrics.resetHistograms();
+        return snapshot;
     }
 
     @Override
     public boolean isConnected() {
-        return mWsStatus == WsStatus.CONNECTED;
+        return mState.get() == WsStatus.CONNECTED;
     }
 
     @Override
     public int getCurrentStatus() {
-        return mWsStatus;
+        return mState.get();
     }
 
     @Override
-    public void setCurrentStatus(int currentStatus) {
-        this.mWsStatus = currentStatus;
+    public boolean compareAndSetStatus(int expect, int update) {
+        return mState.transition(expect, update);
     }
 
+    /**
+     * 非阻塞发送，只负责入队，真正的写出在发送线程完成；未连接时消息写入离线发件箱，连接建立后按顺序回放
+     * @return false 表示发送队列已满，消息被丢弃
+     */
     @Override
     public boolean sendMessage(String msg) {
-        return false;
+        return mSendQueue.enqueue(WsFrame.text(msg));
+    }
+
+    /**
+     * @param priority WsPriority.HIGH / NORMAL / BULK，通话信令用 HIGH，大文件、同步用 BULK
+     */
+    public boolean sendMessage(String msg, int priority) {
+        return mSendQueue.enqueue(WsFrame.text(msg, priority));
     }
 
     @Override
     public boolean sendMessage(ByteString byteString) {
-        return false;
+        return mSendQueue.enqueue(WsFrame.binary(byteString));
+    }
+
+    public boolean sendMessage(ByteString byteString, int priority) {
+        return mSendQueue.enqueue(WsFrame.binary(byteString, priority));
+    }
+
+    /**
+     * 发送一条带类型的二进制消息，type 取值 0 ~ 127，对端需要按 WsFrameCodec 的帧格式解码
+     */
+    @Override
+    public boolean sendMessage(int type, ByteString payload) {
+        return sendMessage(type, payload, WsPriority.NORMAL);
+    }
+
+    /**
+     * 超过 Builder.fragmentSize 的消息会被分片写出（分片不压缩），期间更高优先级的消息可以插队
+     */
+    public boolean sendMessage(int type, ByteString payload, int priority) {
+        if (type < 0 || type > WsFrameCodec.TYPE_USER_MAX) {
+            throw new IllegalArgumentException("type out of range: " + type);
+        }
+        return mSendQueue.enqueue(WsFrame.message(type, payload, priority));
+    }
+
+    /**
+     * 至少一次送达的带类型消息，type 取值 0 ~ 127；服务端确认后回调 onSendResult(ACKED)，重发次数用完回调 FAILED。
+     * 需要开启 Builder.reliable
+     * @return 消息 id（和 WsFrame.getId 一致），在途消息达到窗口上限时返回 -1
+     */
+    public long sendReliable(int type, ByteString payload) {
+        return sendReliable(type, payload, WsPriority.NORMAL);
+    }
+
+    public long sendReliable(int type, ByteString payload, int priority) {
+        if (mAckTracker == null) throw new IllegalStateException("sendReliable requires Builder.reliable");
+        if (type < 0 || type > WsFrameCodec.TYPE_USER_MAX) {
+            throw new IllegalArgumentException("type out of range: " + type);
+        }
+        return mAckTracker.send(type, payload, priority);
+    }
+
+    /**
+     * 发起一次 RPC 调用，不阻塞；同一连接上可以同时有多个调用在途，响应按 id 对应，不要求按顺序返回。
+     * 未连接时直接以 IOException 失败，请求不进离线发件箱；timeout 从调用时开始计算。需要开启 Builder.binaryCodec
+     * @param timeout 毫秒，精度为 WsTimerWheel.TICK
+     */
+    public WsCall call(@NonNull String method, @NonNull ByteString payload, long timeout) {
+        if (mRpc == null) throw new IllegalStateException("call requires Builder.binaryCodec(true)");
+        return mRpc.call(method, payload, timeout);
+    }
+
+    /**
+     * 流式发送：按块从 source 读取，受对端确认的窗口控制，内存占用和总长度无关；传输结束（或失败）后关闭 source。
+     * 对端需要实现 WsStreams 的协议，接收方通过 Builder.streamHandler 处理；流只属于当前连接，断线后失败。
+     * 需要开启 Builder.binaryCodec
+     * @param type 0 ~ 127，接收方通过 WsTransfer.getType 拿到
+     * @param length 总长度，-1 表示未知
+     */
+    public WsTransfer sendStream(int type, @NonNull Source source, long length, int priority) {
+        if (mStreams == null) throw new IllegalStateException("sendStream requires Builder.binaryCodec(true)");
+        if (type < 0 || type > WsFrameCodec.TYPE_USER_MAX) {
+            throw new IllegalArgumentException("type out of range: " + type);
+        }
+        WsPriority.check(priority);
+        return mStreams.send(type, source, length, priority);
+    }
+
+    public WsTransfer sendStream(int type, @NonNull InputStream in, long length, int priority) {
+        return sendStream(type, Okio.source(in), length, priority);
+    }
+
+    /** 发送文件，默认 BULK 优先级 */
+    public WsTransfer sendFile(int type, @NonNull File file) throws IOException {
+        return sendStream(type, Okio.source(file), file.length(), WsPriority.BULK);
     }
 
     public static final class Builder {
@@ -222,6 +1035,39 @@ public class WsManager implements IWsManager {
         private String mWebSocketUrl;
         private OkHttpClient mOkHttpClient;
         private WsStatusListener mWsStatusListener;
+        private int mSendQueueCapacity = WsSendQueue.DEFAULT_CAPACITY;
+        private long mHighWatermark = WsSendQueue.DEFAULT_HIGH_WATERMARK;
+        private long mLowWatermark = WsSendQueue.DEFAULT_LOW_WATERMARK;
+        private int mOutboxCapacity = WsOutbox.DEFAULT_CAPACITY;
+        private long mReconnectBaseDelay = ReconnectScheduler.RECONNECT_BASE;
+        private long mReconnectMaxDelay = ReconnectScheduler.RECONNECT_MAX_TIME;
+        private int mDispatchPolicy = WsDispatcher.SHARED_POOL;
+        private boolean mBinaryCodec;
+        private int mInternEntries;
+        private int mInternMaxLength;
+        private boolean mResume;
+        private int mReliableWindow;
+        private long mRetransmitTimeout = WsAckTracker.DEFAULT_RETRANSMIT_TIMEOUT;
+        private int mMaxAttempts = WsAckTracker.DEFAULT_MAX_ATTEMPTS;
+        private int mCompressThreshold = -1;
+        private long mBatchWindow;
+        private int mBatchMaxCount;
+        private MessageKeySelector mKeySelector;
+        private boolean mHeartbeat;
+        private long mHeartbeatMinInterval = HeartbeatEngine.DEFAULT_MIN_INTERVAL;
+        private long mHeartbeatMaxInterval = HeartbeatEngine.DEFAULT_MAX_INTERVAL;
+        private long mPongTimeout = HeartbeatEngine.DEFAULT_PONG_TIMEOUT;
+        private int mMaxMissedPongs = HeartbeatEngine.DEFAULT_MAX_MISSED;
+        private long mMetricsInterval;
+        private int mPriorityScheduling = WsPriority.WEIGHTED;
+        private int[] mPriorityWeights = WsPriority.DEFAULT_WEIGHTS;
+        private int mFragmentSize = WsSendQueue.DEFAULT_FRAGMENT_SIZE;
+        private WsStreamHandler mStreamHandler;
+        private int mStreamChunkSize = WsStreams.DEFAULT_CHUNK_SIZE;
+        private int mStreamWindow = WsStreams.DEFAULT_WINDOW;
+        private int mInboundCapacity = WsInbound.DEFAULT_CAPACITY;
+        private int mInboundPolicy = WsInbound.DROP_OLDEST;
+        private boolean mInboundCredits;
 
         public Builder(@NonNull Context context) {
             mContext = context;
@@ -232,6 +1078,9 @@ public class WsManager implements IWsManager {
             return this;
         }
 
+        /**
+         * 不设置时使用 WsClients.get()；自定义的 client 建议从 WsClients.newBuilder() 派生，保持共用线程和连接池
+         */
         public WsManager.Builder client(@NonNull OkHttpClient client) {
             mOkHttpClient = client;
             return this;
@@ -242,6 +1091,226 @@ public class WsManager implements IWsManager {
             return this;
         }
 
+        public WsManager.Builder sendQueueCapacity(int capacity) {
+            mSendQueueCapacity = capacity;
+            return this;
+        }
+
+        /**
+         * OkHttp 内部队列的高低水位（字节），超过高水位暂停写出，降到低水位再恢复
+         */
+        public WsManager.Builder sendWatermarks(long high, long low) {
+            mHighWatermark = high;
+            mLowWatermark = low;
+            return this;
+        }
+
+        /**
+         * 离线发件箱文件大小（字节），断线期间的消息落盘，重连后按顺序回放；0 表示关闭。
+         * 交给 OkHttp 之后就不再回放，连接中发送、断线时还在内存队列里的消息也不落盘，需要确认送达的用 sendReliable
+         */
+        public WsManager.Builder outboxCapacity(int bytes) {
+            mOutboxCapacity = bytes;
+            return this;
+        }
+
+        /**
+         * 重连退避的最小和最大间隔（毫秒）
+         */
+        public WsManager.Builder reconnectBackoff(long baseDelay, long maxDelay) {
+            mReconnectBaseDelay = baseDelay;
+            mReconnectMaxDelay = maxDelay;
+            return this;
+        }
+
+        /**
+         * 开启应用层心跳（HeartbeatEngine），默认关闭：服务端需要对 "ping:id" 回复 "pong:id"，
+         * 否则空闲的连接会因为收不到 pong 被判定已死，不停重连
+         */
+        public WsManager.Builder heartbeat() {
+            mHeartbeat = true;
+            return this;
+        }
+
+        /**
+         * 开启应用层心跳，间隔在 [minInterval, maxInterval] 之间自适应（毫秒），连续 maxMissed 次 pongTimeout 内没有回应判定连接已死
+         */
+        public WsManager.Builder heartbeat(long minInterval, long maxInterval, long pongTimeout, int maxMissed) {
+            mHeartbeat = true;
+            mHeartbeatMinInterval = minInterval;
+            mHeartbeatMaxInterval = maxInterval;
+            mPongTimeout = pongTimeout;
+            mMaxMissedPongs = maxMissed;
+            return this;
+        }
+
+        /**
+         * 发送优先级之间的调度方式，WsPriority.STRICT / WEIGHTED（默认）
+         */
+        public WsManager.Builder priorityScheduling(int mode) {
+            mPriorityScheduling = mode;
+            return this;
+        }
+
+        /**
+         * WEIGHTED 调度下各优先级每轮分到的字节额度之比，默认 16 : 4 : 1；会同时切换到 WEIGHTED
+         */
+        public WsManager.Builder priorityWeights(int high, int normal, int bulk) {
+            if (high <= 0 || normal <= 0 || bulk <= 0) throw new IllegalArgumentException("weights must be positive");
+            mPriorityWeights = new int[]{high, normal, bulk};
+            mPriorityScheduling = WsPriority.WEIGHTED;
+            return this;
+        }
+
+        /**
+         * 带类型的消息超过 bytes 字节时分片写出，分片之间可以插入更高优先级的消息，默认 16K；对端需要按 FLAG_FRAGMENT 拼接
+         */
+        public WsManager.Builder fragmentSize(int bytes) {
+            mFragmentSize = bytes;
+            return this;
+        }
+
+        /**
+         * 入站缓冲最多积压 capacity 条还没投递给监听的消息，超过后按 policy 处理，取值见 WsInbound，默认 8192 / DROP_OLDEST；
+         * DISCONNECT 只有配合 resume 才能让带序号的帧由服务端补发
+         */
+        public WsManager.Builder inboundBuffer(int capacity, int policy) {
+            mInboundCapacity = capacity;
+            mInboundPolicy = policy;
+            return this;
+        }
+
+        /**
+         * 按入站缓冲的剩余容量给服务端发额度（TYPE_FLOW_CREDIT），服务端需要按额度发送；会同时开启 binaryCodec
+         */
+        public WsManager.Builder inboundCredits() {
+            mInboundCredits = true;
+            mBinaryCodec = true;
+            return this;
+        }
+
+        /**
+         * 接收对端发来的流（WsStreams 协议），没有设置时拒绝所有流；会同时开启 binaryCodec
+         */
+        public WsManager.Builder streamHandler(@NonNull WsStreamHandler handler) {
+            mStreamHandler = handler;
+            mBinaryCodec = true;
+            return this;
+        }
+
+        /**
+         * 流式发送每块 chunkSize 字节，最多 window 字节等待对端确认；发送方的内存占用不超过 window
+         */
+        public WsManager.Builder streamFlowControl(int chunkSize, int window) {
+            mStreamChunkSize = chunkSize;
+            mStreamWindow = window;
+            return this;
+        }
+
+        /**
+         * 监听回调在哪个线程执行，取值见 WsDispatcher，默认 SHARED_POOL：不占用主线程且同一连接内保持顺序
+         */
+        public WsManager.Builder dispatchPolicy(int policy) {
+            mDispatchPolicy = policy;
+            return this;
+        }
+
+        /**
+         * 把收到的二进制消息按 WsFrameCodec 的帧格式解码，回调 onMessage(WsMessage) 而不是 onMessage(ByteString)
+         */
+        public WsManager.Builder binaryCodec(boolean enable) {
+            mBinaryCodec = enable;
+            return this;
+        }
+
+        /**
+         * 驻留重复出现的小消息：内容相同的 WsMessage.payload() / utf8() 返回同一个实例，见 WsInternCache；
+         * 会同时开启 binaryCodec
+         */
+        public WsManager.Builder intern() {
+            return intern(WsInternCache.DEFAULT_ENTRIES, WsInternCache.DEFAULT_MAX_LENGTH);
+        }
+
+        /**
+         * @param maxEntries 最多驻留多少条
+         * @param maxLength 只驻留不超过这么多字节的 payload
+         */
+        public WsManager.Builder intern(int maxEntries, int maxLength) {
+            mInternEntries = maxEntries;
+            mInternMaxLength = maxLength;
+            mBinaryCodec = true;
+            return this;
+        }
+
+        /**
+         * 开启 deflate 压缩（服务端握手响应同意后生效），只作用于带类型的二进制消息，payload 小于 threshold 字节不压缩；
+         * 会同时开启 binaryCodec
+         */
+        public WsManager.Builder compression() {
+            return compression(WsCompressor.DEFAULT_THRESHOLD);
+        }
+
+        public WsManager.Builder compression(int threshold) {
+            mCompressThreshold = Math.max(0, threshold);
+            mBinaryCodec = true;
+            return this;
+        }
+
+        /**
+         * 开启断线续传：服务端给下行帧编号，重连后只补发没有收到的部分，见 WsSession；会同时开启 binaryCodec
+         */
+        public WsManager.Builder resume(boolean enable) {
+            mResume = enable;
+            if (enable) mBinaryCodec = true;
+            return this;
+        }
+
+        /**
+         * 开启可靠发送（sendReliable），使用默认的窗口和重发参数；会同时开启 binaryCodec
+         */
+        public WsManager.Builder reliable() {
+            return reliable(WsAckTracker.DEFAULT_WINDOW, WsAckTracker.DEFAULT_RETRANSMIT_TIMEOUT,
+                    WsAckTracker.DEFAULT_MAX_ATTEMPTS);
+        }
+
+        /**
+         * @param window 最多同时有多少条消息等待确认
+         * @param retransmitTimeout 首次重发的超时（毫秒），之后每次翻倍
+         * @param maxAttempts 连接正常时最多重发几次，断线期间不计
+         */
+        public WsManager.Builder reliable(int window, long retransmitTimeout, int maxAttempts) {
+            mReliableWindow = window;
+            mRetransmitTimeout = retransmitTimeout;
+            mMaxAttempts = maxAttempts;
+            mBinaryCodec = true;
+            return this;
+        }
+
+        /**
+         * 入站文本帧合并投递：window 毫秒内或攒满 maxCount 条后一次性回调 onMessages，window 为 0 表示逐条回调
+         */
+        public WsManager.Builder batch(long window, int maxCount) {
+            mBatchWindow = window;
+            mBatchMaxCount = maxCount;
+            return this;
+        }
+
+        /**
+         * 在 batch 的基础上开启 latest-wins：同一窗口内 key 相同的消息只保留最新一条
+         */
+        public WsManager.Builder latestWins(long window, int maxCount, @NonNull MessageKeySelector selector) {
+            mKeySelector = selector;
+            return batch(window, maxCount);
+        }
+
+        /**
+         * 每隔 interval 毫秒把 getMetrics() 打到日志里，0 表示不输出（默认）；指标本身总是在记录
+         */
+        public WsManager.Builder metricsDump(long interval) {
+            mMetricsInterval = interval;
+            return this;
+        }
+
         public WsManager build() {
             return new WsManager(this);
         }
@@ -0,0 +1,141 @@
+package com.tbj.call.ws;
+
+import java.nio.ByteBuffer;
+
+import okio.ByteString;
+
+/**
+ * WsFrameCodec 解码出的一条消息，直接指向收到的 ByteString，不拷贝 payload
+ *
+ * 对象会被复用：只在 WsStatusListener.onMessage(WsMessage) 回调期间有效，
+ * 需要保留内容时调用 payload() / utf8() 拷贝出来；开启 Builder.intern 后，重复出现的小消息返回同一个驻留的实例
+ */
+public final class WsMessage {
+
+    int mType;
+    int mFlags;
+    int mChannel;
+    int mSeq;
+    int mFragment = -1; // 分片信息 (优先级 << 1 | 是否还有后续)，-1 表示不是分片，见 WsReassembler
+    ByteString mSource;
+    int mOffset;
+    int mLength;
+    // topic 单独指向帧头所在的 ByteString，分片拼接后 mSource 换了也不受影响
+    ByteString mTopicSource;
+    int mTopicOffset;
+    int mTopicLength;
+    WsInternCache mIntern;
+
+    WsMessage() {
+    }
+
+    void set(int type, int flags, int channel, ByteString source, int offset, int length) {
+        mType = type;
+        mFlags = flags;
+        mChannel = channel;
+        mSource = source;
+        mOffset = offset;
+        mLength = length;
+    }
+
+    void clear() {
+        mSource = null;
+        mTopicSource = null;
+        mSeq = 0;
+        mFragment = -1;
+    }
+
+    public int type() {
+        return mType;
+    }
+
+    public int flags() {
+        return mFlags;
+    }
+
+    /** 逻辑通道号，0 表示主通道 */
+    public int channel() {
+        return mChannel;
+    }
+
+    /** 服务端给的会话内序号，从 1 开始，0 表示这一帧没有序号 */
+    public int seq() {
+        return mSeq;
+    }
+
+    /** 帧头是否带 topic，见 WsRouter */
+    public boolean hasTopic() {
+        return mTopicSource != null;
+    }
+
+    /** 按 UTF-8 解码 topic，会分配 String；没有 topic 时返回 null */
+    public String topic() {
+        return mTopicSource != null ? mTopicSource.substring(mTopicOffset, mTopicOffset + mTopicLength).utf8() : null;
+    }
+
+    /** payload 字节数 */
+    public int size() {
+        return mLength;
+    }
+
+    public byte getByte(int index) {
+        checkIndex(index, 1);
+        return mSource.getByte(mOffset + index);
+    }
+
+    /** 大端序 */
+    public int getInt(int index) {
+        checkIndex(index, 4);
+        int pos = mOffset + index;
+        return (mSource.getByte(pos) & 0xff) << 24
+                | (mSource.getByte(pos + 1) & 0xff) << 16
+                | (mSource.getByte(pos + 2) & 0xff) << 8
+                | (mSource.getByte(pos + 3) & 0xff);
+    }
+
+    /** 大端序 */
+    public long getLong(int index) {
+        return (getInt(index) & 0xffffffffL) << 32 | (getInt(index + 4) & 0xffffffffL);
+    }
+
+    /** 和给定内容比较，不分配内存 */
+    public boolean contentEquals(ByteString other) {
+        return other.size() == mLength && mSource.rangeEquals(mOffset, other, 0, mLength);
+    }
+
+    /** 把 payload 拷贝到 dst，dst 需要至少 size() 个字节的空间 */
+    void copyTo(byte[] dst, int dstOffset) {
+        ByteBuffer buffer = mSource.asByteBuffer();
+        buffer.position(mOffset);
+        buffer.get(dst, dstOffset, mLength);
+    }
+
+    /** 拷贝出 payload，ByteString 不可变，驻留的实例可以放心保留 */
+    public ByteString payload() {
+        if (mIntern != null && mIntern.accepts(mLength)) {
+            ByteString interned = mIntern.bytes(mSource, mOffset, mLength);
+            if (interned != null) return interned;
+        }
+        return mSource.substring(mOffset, mOffset + mLength);
+    }
+
+    /** 按 UTF-8 解码 payload，没有驻留时会分配 String */
+    public String utf8() {
+        if (mIntern != null && mIntern.accepts(mLength)) {
+            String interned = mIntern.utf8(mSource, mOffset, mLength);
+            if (interned != null) return interned;
+        }
+        return mSource.substring(mOffset, mOffset + mLength).utf8();
+    }
+
+    private void checkIndex(int index, int width) {
+        if (index < 0 || index + width > mLength) {
+            throw new IndexOutOfBoundsException("index " + index + " size " + mLength);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "WsMessage{type " + mType + ", channel " + mChannel + ", seq " + mSeq + ", flags " + mFlags + ", size " + mLength + "}";
+    }
+}
@@ -0,0 +1,142 @@
+package com.tbj.call.ws;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * WsManager 的指标记录，总是开启
+ *
+ * 记录都是 AtomicLong / WsHistogram 的自增，不加锁也不分配对象，可以直接放在 OkHttp 读线程、发送线程和分发线程上；
+ * 只有 snapshot 会拷贝直方图
+ */
+final class WsMetrics {
+
+    private final long mCreatedAt = System.nanoTime();
+
+    private final AtomicLong mConnects = new AtomicLong();
+    private final AtomicLong mReconnects = new AtomicLong();
+    private final AtomicLong mMigrations = new AtomicLong();
+    private final AtomicLongArray mReconnectCauses = new AtomicLongArray(WsMetricsSnapshot.CAUSE_COUNT);
+
+    private final AtomicLong mMessagesIn = new AtomicLong();
+    private final AtomicLong mBytesIn = new AtomicLong();
+    private final AtomicLong mMessagesOut = new AtomicLong();
+    private final AtomicLong mBytesOut = new AtomicLong();
+    private final AtomicLong mDropped = new AtomicLong();
+    private final AtomicLong mInboundDropped = new AtomicLong();
+
+    private final WsHistogram mConnectTime = new WsHistogram();
+    private final WsHistogram mFirstMessage = new WsHistogram();
+    private final WsHistogram mDispatchLatency = new WsHistogram();
+    private final WsHistogram mHeartbeatRtt = new WsHistogram();
+    private final WsHistogram[] mQueueWait = new WsHistogram[WsPriority.COUNT];
+
+    // 当前连接的 newWebSocket 时刻，收到第一条消息后清零
+    private volatile long mAwaitFirstSince;
+
+    WsMetrics() {
+        for (int i = 0; i < mQueueWait.length; i++) {
+            mQueueWait[i] = new WsHistogram();
+        }
+    }
+
+    /**
+     * @param connectStartNanos 这条连接 newWebSocket 的时刻
+     * @return 建连耗时（纳秒）
+     */
+    long onOpen(long connectStartNanos) {
+        long elapsed = System.nanoTime() - connectStartNanos;
+        mConnectTime.record(TimeUnit.NANOSECONDS.toMicros(elapsed));
+        mConnects.incrementAndGet();
+        mAwaitFirstSince = connectStartNanos;
+        return elapsed;
+    }
+
+    /** 文本按字符数计 */
+    void onReceived(long bytes) {
+        mMessagesIn.incrementAndGet();
+        mBytesIn.addAndGet(bytes);
+        long since = mAwaitFirstSince;
+        if (since != 0) {
+            mAwaitFirstSince = 0;
+            mFirstMessage.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - since));
+        }
+    }
+
+    void onSent(WsFrame frame) {
+        mMessagesOut.incrementAndGet();
+        mBytesOut.addAndGet(frame.isText() ? frame.getText().length() : frame.getBytes().size());
+        // 从发件箱回放的消息没有入队时刻
+        long enqueuedAt = frame.mEnqueuedAt;
+        if (enqueuedAt != 0) {
+            mQueueWait[frame.getPriority()].record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - enqueuedAt));
+        }
+    }
+
+    void onDropped() {
+        mDropped.incrementAndGet();
+    }
+
+    /** 入站缓冲溢出丢掉一条消息 */
+    void onInboundDropped() {
+        mInboundDropped.incrementAndGet();
+    }
+
+    /** @param receivedNanos 读线程收到消息的时刻，在监听回调开始前调用 */
+    void onDispatched(long receivedNanos) {
+        mDispatchLatency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - receivedNanos));
+    }
+
+    void onRtt(long rttNanos) {
+        mHeartbeatRtt.record(TimeUnit.NANOSECONDS.toMicros(rttNanos));
+    }
+
+    /** 进入 RECONNECTING 时调用，cause 取 WsMetricsSnapshot.CAUSE_* */
+    void onReconnectScheduled(int cause) {
+        mReconnectCauses.incrementAndGet(cause);
+    }
+
+    void onReconnect() {
+        mReconnects.incrementAndGet();
+    }
+
+    void onMigrated() {
+        mMigrations.incrementAndGet();
+    }
+
+    WsMetricsSnapshot snapshot(int state, int sendQueueDepth, int[] sendQueueDepths, int inboundDepth,
+                               long socketQueueBytes, int reliableInFlight) {
+        long[] causes = new long[WsMetricsSnapshot.CAUSE_COUNT];
+        for (int i = 0; i < causes.length; i++) {
+            causes[i] = mReconnectCauses.get(i);
+        }
+        WsHistogram[] queueWait = new WsHistogram[mQueueWait.length];
+        for (int i = 0; i < queueWait.length; i++) {
+            queueWait[i] = copy(mQueueWait[i]);
+        }
+        return new WsMetricsSnapshot(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mCreatedAt), state,
+                mConnects.get(), mReconnects.get(), mMigrations.get(), causes,
+                mMessagesIn.get(), mBytesIn.get(), mMessagesOut.get(), mBytesOut.get(), mDropped.get(),
+                sendQueueDepth, sendQueueDepths, inboundDepth, mInboundDropped.get(), socketQueueBytes,
+                reliableInFlight,
+                copy(mConnectTime), copy(mFirstMessage), copy(mDispatchLatency), copy(mHeartbeatRtt), queueWait);
+    }
+
+    private static WsHistogram copy(WsHistogram histogram) {
+        WsHistogram copy = new WsHistogram();
+        copy.add(histogram);
+        return copy;
+    }
+
+    /** 只清零直方图，计数器保持单调递增，方便按差值计算速率 */
+    void resetHistograms() {
+        mConnectTime.reset();
+        mFirstMessage.reset();
+        mDispatchLatency.reset();
+        mHeartbeatRtt.reset();
+        for (WsHistogram histogram : mQueueWait) {
+            histogram.reset();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.tbj.call.ws;
+
+/**
+ * WsManager 的指标快照，由 WsManager.getMetrics() 生成；直方图是拷贝，之后的记录不会影响它
+ *
+ * 延迟都以微秒记录：
+ * - connectTime：newWebSocket 到 onOpen
+ * - firstMessage：newWebSocket 到这条连接上的第一条入站消息
+ * - dispatchLatency：OkHttp 读线程收到消息到业务监听开始执行
+ * - heartbeatRtt：ping 到 pong
+ * - queueWait：按优先级，消息进入内存发送队列到交给 OkHttp（分片的消息到最后一片），不含离线发件箱
+ */
+public final class WsMetricsSnapshot {
+
+    /** onFailure：读写出错或连接建立失败 */
+    public static final int CAUSE_FAILURE = 0;
+    /** 服务端发起的关闭（onClosing / onClosed） */
+    public static final int CAUSE_SERVER_CLOSE = 1;
+    /** 心跳连续丢失 */
+    public static final int CAUSE_HEARTBEAT = 2;
+    /** 网络变化 */
+    public static final int CAUSE_NETWORK = 3;
+    /** 服务端消息要求重连 */
+    public static final int CAUSE_SERVER_REQUEST = 4;
+
+    static final int CAUSE_COUNT = 5;
+
+    private static final String[] CAUSE_NAMES = {"failure", "server_close", "heartbeat", "network", "server_request"};
+
+    public static String causeName(int cause) {
+        return cause >= 0 && cause < CAUSE_COUNT ? CAUSE_NAMES[cause] : "unknown(" + cause + ")";
+    }
+
+    public final long uptimeMillis;
+    public final int state;
+
+    public final long connects;
+    public final long reconnects;
+    public final long migrations;
+    /** 按 CAUSE_* 下标的重连原因计数 */
+    public final long[] reconnectCauses;
+
+    public final long messagesIn;
+    public final long bytesIn;
+    public final long messagesOut;
+    public final long bytesOut;
+    public final long dropped;
+
+    public final int sendQueueDepth;
+    /** 按 WsPriority 下标的内存队列深度 */
+    public final int[] sendQueueDepths;
+    /** 入站缓冲里还没投递给监听的消息数，和溢出丢掉的累计条数 */
+    public final int inboundDepth;
+    public final long inboundDropped;
+    public final long socketQueueBytes;
+    public final int reliableInFlight;
+
+    public final WsHistogram connectTime;
+    public final WsHistogram firstMessage;
+    public final WsHistogram dispatchLatency;
+    public final WsHistogram heartbeatRtt;
+    /** 按 WsPriority 下标 */
+    public final WsHistogram[] queueWait;
+
+    WsMetricsSnapshot(long uptimeMillis, int state, long connects, long reconnects, long migrations,
+                      long[] reconnectCauses, long messagesIn, long bytesIn, long messagesOut, long bytesOut,
+                      long dropped, int sendQueueDepth, int[] sendQueueDepths, int inboundDepth,
+                      long inboundDropped, long socketQueueBytes, int reliableInFlight,
+                      WsHistogram connectTime, WsHistogram firstMessage, WsHistogram dispatchLatency,
+                      WsHistogram heartbeatRtt, WsHistogram[] queueWait) {
+        this.uptimeMillis = uptimeMillis;
+        this.state = state;
+        this.connects = connects;
+        this.reconnects = reconnects;
+        this.migrations = migrations;
+        this.reconnectCauses = reconnectCauses;
+        this.messagesIn = messagesIn;
+        this.bytesIn = bytesIn;
+        this.messagesOut = messagesOut;
+        this.bytesOut = bytesOut;
+        this.dropped = dropped;
+        this.sendQueueDepth = sendQueueDepth;
+        this.sendQueueDepths = sendQueueDepths;
+        this.inboundDepth = inboundDepth;
+        this.inboundDropped = inboundDropped;
+        this.socketQueueBytes = socketQueueBytes;
+        this.reliableInFlight = reliableInFlight;
+        this.connectTime = connectTime;
+        this.firstMessage = firstMessage;
+        this.dispatchLatency = dispatchLatency;
+        this.heartbeatRtt = heartbeatRtt;
+        this.queueWait = queueWait;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder causes = new StringBuilder();
+        for (int i = 0; i < CAUSE_COUNT; i++) {
+            if (reconnectCauses[i] == 0) continue;
+            if (causes.length() > 0) causes.append(' ');
+            causes.append(causeName(i)).append('=').append(reconnectCauses[i]);
+        }
+        StringBuilder priorities = new StringBuilder();
+        for (int i = 0; i < WsPriority.COUNT; i++) {
+            priorities.append(", ").append(WsPriority.name(i)).append(" depth ").append(sendQueueDepths[i])
+                    .append(" wait(us) ").append(queueWait[i]);
+        }
+        return "WsMetrics{" + WsStatus.name(state) + ", uptime " + uptimeMillis + "ms"
+                + ", connects " + connects + ", reconnects " + reconnects + " [" + causes + "], migrations " + migrations
+                + ", in " + messagesIn + " msg / " + bytesIn + "B, out " + messagesOut + " msg / " + bytesOut + "B"
+                + ", dropped " + dropped
+                + ", queue " + sendQueueDepth + " / socket " + socketQueueBytes + "B, in flight " + reliableInFlight
+                + ", inbound " + inboundDepth + " dropped " + inboundDropped
+                + ", connect(us) " + connectTime
+                + ", first message(us) " + firstMessage
+                + ", dispatch(us) " + dispatchLatency
+                + ", rtt(us) " + heartbeatRtt
+                + priorities + "}";
+    }
+}
@@ -0,0 +1,278 @@
+package com.tbj.call.ws;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import okio.ByteString;
+
+/**
+ * 离线发件箱：断线期间发送的消息追加写到按 url 区分的内存映射文件，进程被杀也不会丢
+ *
+ * 保证范围是“交给 OkHttp 之前”，之后最多一次（at-most-once）：
+ * - 记录被 WebSocket.send 接受就确认，只说明进了 OkHttp 的队列；紧接着连接断开时没写到网络上的帧不会再回放
+ * - 已经连接时发送的消息直接进内存队列，断线时还留在内存队列里的消息重连后照常写出，但不落盘，进程被杀就丢了
+ * 需要端到端确认的消息用 WsManager.sendReliable，由 WsAckTracker 按服务端 ACK 重发
+ *
+ * 文件格式：
+ *   header: magic(4) | readOffset(4) | 保留(8)
+ *   record: length(4) | kind(1) | payload(length - 1)，length == 0 表示后面没有记录
+ *   kind 为 message 时 payload 的第一个字节是消息类型
+ *
+ * 只保存主通道的消息：逻辑通道号是进程内分配的，重启后对不上，通道消息只留在内存队列里
+ *
+ * 追加只是内存拷贝，不在调用线程做系统调用；fsync 由 outbox 线程按批合并（group commit），只有空间不足压缩时例外
+ * 记录被 OkHttp 接受之后视为已确认，readOffset 前移，全部确认后整个文件回收复用
+ *
+ * 崩溃安全：header 里的 readOffset 总是最后更新，任何时刻崩溃它指向的都是完整的记录
+ */
+final class WsOutbox {
+
+    private static final String TAG = "MockWebSocket";
+
+    static final int DEFAULT_CAPACITY = 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MAGIC = 0x57534f42; // "WSOB"
+    private static final int HEADER_SIZE = 16;
+    private static final int OFFSET_READ = 4;
+    private static final int RECORD_HEADER = 5;
+
+    private static final byte KIND_TEXT = 0;
+    private static final byte KIND_BINARY = 1;
+    private static final byte KIND_MESSAGE = 2;
+
+    private static final long COMMIT_DELAY = 20;      // ms，一批内的追加合并成一次 force
+    private static final int COMMIT_BATCH = 64;       // 攒够这么多条立即提交
+
+    private final RandomAccessFile mFile;
+    private final MappedByteBuffer mBuffer;
+    private final ByteBuffer mCursor; // 批量读写用，只在锁内使用
+    private final int mCapacity;
+    private final ScheduledExecutorService mCommitter;
+
+    private int mReadOffset;
+    private int mWriteOffset;
+    private int mPendingCount;
+
+    private int mUncommitted;
+    private boolean mCommitScheduled;
+    private boolean mClosed;
+
+    private final Runnable mCommitRunnable = this::commit;
+
+    private WsOutbox(RandomAccessFile file, MappedByteBuffer buffer, int capacity, String name) {
+        mFile = file;
+        mBuffer = buffer;
+        mCursor = buffer.duplicate();
+        mCapacity = capacity;
+        mCommitter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ws-outbox " + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        recover();
+    }
+
+    /**
+     * 打开（或创建）url 对应的发件箱，失败时返回 null，调用方退化为纯内存队列
+     */
+    static WsOutbox open(File dir, String url, int capacity) {
+        if (dir == null || capacity <= HEADER_SIZE + RECORD_HEADER) return null;
+        File outboxDir = new File(dir, "ws_outbox");
+        if (!outboxDir.exists() && !outboxDir.mkdirs()) return null;
+        File file = new File(outboxDir, ByteString.encodeUtf8(url).md5().hex());
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            return new WsOutbox(raf, buffer, capacity, url);
+        } catch (IOException e) {
+            Log.w(TAG, "open outbox failed " + file, e);
+            return null;
+        }
+    }
+
+    private void recover() {
+        if (mBuffer.getInt(0) != MAGIC) {
+            mBuffer.putInt(0, MAGIC);
+            reset();
+            return;
+        }
+        int offset = mBuffer.getInt(OFFSET_READ);
+        if (offset < HEADER_SIZE || offset > mCapacity) {
+            reset();
+            return;
+        }
+        mReadOffset = offset;
+        int count = 0;
+        while (offset + 4 <= mCapacity) {
+            int length = mBuffer.getInt(offset);
+            if (length <= 0 || offset + 4 + length > mCapacity) break;
+            offset += 4 + length;
+            count++;
+        }
+        mWriteOffset = offset;
+        mPendingCount = count;
+        if (count > 0) Log.i(TAG, "outbox recovered " + count + " messages");
+    }
+
+    private void reset() {
+        mReadOffset = HEADER_SIZE;
+        mWriteOffset = HEADER_SIZE;
+        mPendingCount = 0;
+        mBuffer.putInt(HEADER_SIZE, 0);
+        mBuffer.putInt(OFFSET_READ, HEADER_SIZE);
+    }
+
+    synchronized boolean hasPending() {
+        return mPendingCount > 0;
+    }
+
+    synchronized int pendingCount() {
+        return mPendingCount;
+    }
+
+    /**
+     * 追加一条记录，空间不足时先压缩已确认的部分，仍然不够（或已经 close）返回 false；通道消息不能进发件箱
+     */
+    boolean append(WsFrame frame) {
+        if (frame.getChannel() != 0) throw new IllegalArgumentException("channel frames are not persisted");
+        byte kind;
+        byte[] payload;
+        if (frame.isText()) {
+            kind = KIND_TEXT;
+            payload = frame.getText().getBytes(UTF_8);
+        } else if (frame.isMessage()) {
+            kind = KIND_MESSAGE;
+            ByteString bytes = frame.getBytes();
+            payload = new byte[1 + bytes.size()];
+            payload[0] = (byte) frame.getType();
+            bytes.asByteBuffer().get(payload, 1, bytes.size());
+        } else {
+            kind = KIND_BINARY;
+            payload = frame.getBytes().toByteArray();
+        }
+        int recordSize = RECORD_HEADER + payload.length;
+        synchronized (this) {
+            if (mClosed) return false;
+            if (mWriteOffset + recordSize > mCapacity) {
+                compact();
+                if (mWriteOffset + recordSize > mCapacity) return false;
+            }
+            int offset = mWriteOffset;
+            int end = offset + recordSize;
+            // 先写结束标记和内容，最后写长度，保证任何时刻扫描到的记录都是完整的
+            if (end + 4 <= mCapacity) mBuffer.putInt(end, 0);
+            mBuffer.put(offset + 4, kind);
+            mCursor.position(offset + RECORD_HEADER);
+            mCursor.put(payload);
+            mBuffer.putInt(offset, 1 + payload.length);
+            mWriteOffset = end;
+            mPendingCount++;
+            markDirty();
+        }
+        return true;
+    }
+
+    /**
+     * 读出最早一条未确认的记录，不移动读指针
+     */
+    synchronized WsFrame peek() {
+        if (mPendingCount == 0) return null;
+        int offset = mReadOffset;
+        int length = mBuffer.getInt(offset);
+        byte kind = mBuffer.get(offset + 4);
+        byte[] payload = new byte[length - 1];
+        mCursor.position(offset + RECORD_HEADER);
+        mCursor.get(payload);
+        switch (kind) {
+            case KIND_TEXT:
+                return WsFrame.text(new String(payload, UTF_8));
+            case KIND_MESSAGE:
+                return WsFrame.message(payload[0] & 0xff, ByteString.of(payload, 1, payload.length - 1));
+            default:
+                return WsFrame.binary(ByteString.of(payload));
+        }
+    }
+
+    /**
+     * 确认最早一条记录已经发出，全部确认后回收整个文件
+     */
+    synchronized void acknowledge() {
+        if (mPendingCount == 0) return;
+        mReadOffset += 4 + mBuffer.getInt(mReadOffset);
+        mPendingCount--;
+        // 先让 header 越过这条记录，再回收文件，中间崩溃也不会重放已确认的记录
+        mBuffer.putInt(OFFSET_READ, mReadOffset);
+        if (mPendingCount == 0) reset();
+        markDirty();
+    }
+
+    /**
+     * 把未确认的记录挪到文件头部。只在拷贝（连同结束标记）不会覆盖它们时进行：
+     * 先拷贝、force 落盘，再改 header，崩溃时 header 指向的要么是原来的记录，要么是完整的副本；
+     * 未确认的部分比已确认的多时不压缩，append 返回 false
+     */
+    private void compact() {
+        int length = mWriteOffset - mReadOffset;
+        if (HEADER_SIZE + length + 4 > mReadOffset) return;
+        byte[] pending = new byte[length];
+        mCursor.position(mReadOffset);
+        mCursor.get(pending);
+        mCursor.position(HEADER_SIZE);
+        mCursor.put(pending);
+        mBuffer.putInt(HEADER_SIZE + length, 0);
+        mBuffer.force();
+        mBuffer.putInt(OFFSET_READ, HEADER_SIZE);
+        mReadOffset = HEADER_SIZE;
+        mWriteOffset = HEADER_SIZE + length;
+        markDirty();
+    }
+
+    // 持有锁时调用；close 之后 committer 已经 shutdown，不能再提交任务
+    private void markDirty() {
+        if (mClosed) return;
+        mUncommitted++;
+        if (mUncommitted == COMMIT_BATCH) {
+            mCommitter.execute(mCommitRunnable);
+            mCommitScheduled = true;
+        } else if (!mCommitScheduled) {
+            mCommitter.schedule(mCommitRunnable, COMMIT_DELAY, TimeUnit.MILLISECONDS);
+            mCommitScheduled = true;
+        }
+    }
+
+    private void commit() {
+        synchronized (this) {
+            if (mUncommitted == 0) return;
+            mUncommitted = 0;
+            mCommitScheduled = false;
+        }
+        mBuffer.force();
+    }
+
+    void close() {
+        synchronized (this) {
+            if (mClosed) return;
+            mClosed = true;
+        }
+        mCommitter.execute(() -> {
+            mBuffer.force();
+            try {
+                mFile.close();
+            } catch (IOException ignored) {
+            }
+        });
+        mCommitter.shutdown();
+    }
+}
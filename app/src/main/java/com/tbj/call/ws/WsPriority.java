@@ -0,0 +1,45 @@
+package com.tbj.call.ws;
+
+/**
+ * 发送优先级和优先级之间的调度方式，通过 WsManager.Builder.priorityScheduling / priorityWeights 配置
+ *
+ * 每个优先级有自己的发送队列（每个逻辑通道各一个），同一优先级内各通道按字节公平轮转
+ */
+public final class WsPriority {
+
+    /** 通话信令：接听、挂断、ICE candidate；OkHttp 队列超过高水位时也照常写出 */
+    public static final int HIGH = 0;
+    /** 普通消息（默认） */
+    public static final int NORMAL = 1;
+    /** 大文件上传、历史消息同步等批量数据 */
+    public static final int BULK = 2;
+
+    static final int COUNT = 3;
+
+    /** 严格优先级：高优先级有数据就不写低优先级，低优先级可能被饿死 */
+    public static final int STRICT = 0;
+    /** 加权（默认）：每轮按权重分配字节额度，有额度的优先级之间仍按先高后低写出，低优先级至少拿到自己的份额 */
+    public static final int WEIGHTED = 1;
+
+    static final int[] DEFAULT_WEIGHTS = {16, 4, 1};
+
+    private WsPriority() {
+    }
+
+    static void check(int priority) {
+        if (priority < HIGH || priority > BULK) throw new IllegalArgumentException("priority out of range: " + priority);
+    }
+
+    public static String name(int priority) {
+        switch (priority) {
+            case HIGH:
+                return "HIGH";
+            case NORMAL:
+                return "NORMAL";
+            case BULK:
+                return "BULK";
+            default:
+                return "UNKNOWN(" + priority + ")";
+        }
+    }
+}
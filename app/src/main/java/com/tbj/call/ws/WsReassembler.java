@@ -0,0 +1,73 @@
+package com.tbj.call.ws;
+
+import android.util.Log;
+
+import okio.Buffer;
+import okio.ByteString;
+
+/**
+ * 把 FLAG_FRAGMENT 的分片拼回完整消息，只在 OkHttp 读线程上使用
+ *
+ * 同一通道、同一优先级同时只有一条消息在分片，按 (通道, 优先级) 缓存；不同优先级的分片可以交错到达。
+ * 单条消息超过 MAX_MESSAGE_SIZE 时整条丢弃，连接重建时清空
+ */
+final class WsReassembler {
+
+    private static final String TAG = "MockWebSocket";
+
+    static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+
+    // 超限后占位，直到最后一片到达
+    private static final Buffer DISCARDING = new Buffer();
+
+    private final LongObjectMap<Buffer> mPartial = new LongObjectMap<>(8);
+
+    /**
+     * @return true 表示 message 是完整消息（没有分片，或者已经拼好），false 表示分片已缓存或被丢弃，message 可以回收
+     */
+    boolean accept(WsMessage message) {
+        int fragment = message.mFragment;
+        if (fragment < 0) return true;
+        // LongObjectMap 不能用 0 做 key
+        long key = ((long) message.mChannel << 8 | (fragment >>> 1)) + 1;
+        boolean more = (fragment & 1) != 0;
+        Buffer buffer = mPartial.get(key);
+        if (buffer == DISCARDING) {
+            if (!more) mPartial.remove(key);
+            return false;
+        }
+        if (buffer == null) {
+            if (!more) {
+                // 只有一片
+                message.mFlags &= ~WsFrameCodec.FLAG_FRAGMENT;
+                message.mFragment = -1;
+                return true;
+            }
+            buffer = new Buffer();
+            mPartial.put(key, buffer);
+        }
+        if (buffer.size() + message.mLength > MAX_MESSAGE_SIZE) {
+            Log.w(TAG, "client drop fragmented message over " + MAX_MESSAGE_SIZE + " bytes, channel " + message.mChannel);
+            buffer.clear();
+            if (more) {
+                mPartial.put(key, DISCARDING);
+            } else {
+                mPartial.remove(key);
+            }
+            return false;
+        }
+        buffer.write(message.mSource.substring(message.mOffset, message.mOffset + message.mLength));
+        if (more) return false;
+        mPartial.remove(key);
+        ByteString whole = buffer.readByteString();
+        message.set(message.mType, message.mFlags & ~WsFrameCodec.FLAG_FRAGMENT, message.mChannel, whole, 0, whole.size());
+        message.mFragment = -1;
+        return true;
+    }
+
+    /** 新连接上不会再收到旧连接的后续分片 */
+    void clear() {
+        mPartial.forEach((key, buffer) -> buffer.clear());
+        mPartial.clear();
+    }
+}
@@ -0,0 +1,73 @@
+package com.tbj.call.ws;
+
+import android.util.Log;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 所有 WsManager 的注册表，按 url 索引，替代原来 App 里的静态 HashMap
+ *
+ * - 读不加锁：ConcurrentHashMap 的遍历是弱一致的，不会抛 ConcurrentModificationException
+ * - WsManager 在 startConnect 时注册、stopConnect / release 时移除，已停止的连接不会再收到网络变化
+ * - 网络变化并行分发给各个 WsManager，一个连接处理慢不会拖住其它连接，也不占用广播接收的主线程；
+ *   同一个 WsManager 的网络变化按到达顺序串行处理，NO_NET 之后紧跟 WIFI 不会乱序
+ */
+public final class WsRegistry {
+
+    private static final String TAG = "MockWebSocket";
+
+    private static final ConcurrentHashMap<String, WsManager> sManagers = new ConcurrentHashMap<>();
+    // 每个 WsManager 一个串行通道，共用 sFanOut 的线程
+    private static final ConcurrentHashMap<WsManager, Executor> sLanes = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger sIndex = new AtomicInteger();
+    private static final ExecutorService sFanOut = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "ws-network-" + sIndex.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private WsRegistry() {
+    }
+
+    static void register(WsManager manager) {
+        if (!sLanes.containsKey(manager)) sLanes.putIfAbsent(manager, WsDispatcher.ordered(sFanOut));
+        WsManager previous = sManagers.put(manager.getUrl(), manager);
+        if (previous != null && previous != manager) {
+            sLanes.remove(previous);
+            Log.w(TAG, "replace WsManager for " + manager.getUrl());
+        }
+    }
+
+    static void unregister(WsManager manager) {
+        if (sManagers.remove(manager.getUrl(), manager)) sLanes.remove(manager);
+    }
+
+    public static WsManager get(String url) {
+        return sManagers.get(url);
+    }
+
+    /** 只读视图，可以在任意线程遍历 */
+    public static Collection<WsManager> getManagers() {
+        return Collections.unmodifiableCollection(sManagers.values());
+    }
+
+    /**
+     * 把网络变化并行分发给所有已注册的 WsManager，同一个 WsManager 按调用顺序处理，立即返回
+     * @param networkType NetworkUtils.getNetworkType() 的返回值
+     */
+    public static void dispatchNetworkChange(String networkType) {
+        for (WsManager manager : sManagers.values()) {
+            WsManager.OnNetworkStateChangedListener listener = manager.getNetworkListener();
+            Executor lane = sLanes.get(manager);
+            if (listener == null || lane == null) continue;
+            lane.execute(() -> listener.onNetStateChanged(networkType));
+        }
+    }
+}
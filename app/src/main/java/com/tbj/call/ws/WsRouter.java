@@ -0,0 +1,229 @@
+package com.tbj.call.ws;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import okio.ByteString;
+
+/**
+ * 按消息类型或 topic 前缀订阅主通道的二进制帧，通过 WsManager.getRouter 获得；需要开启 Builder.binaryCodec
+ *
+ * - 路由只看帧头：type 查 128 项的直接映射表，topic（FLAG_TOPIC）按字节走前缀树，不解码 payload、不分配 String
+ * - 订阅变化后只作废路由表，下一帧到达时在读线程上重新编译成不可变的数组，之后查表不加锁
+ * - 带 topic 的帧交给所有前缀匹配的订阅者；没有匹配时交给订阅了这个 type 的；都没有就直接回收，payload 不会被解码。
+ *   不带 topic 的帧没有 type 订阅者时照旧回调 WsStatusListener.onMessage(WsMessage)
+ * - 回调在 WsManager 的分发线程上，WsMessage 只在回调期间有效，和 onMessage(WsMessage) 一样
+ *
+ * 逻辑通道上的帧由 WsChannel 的监听处理，不经过路由
+ */
+public final class WsRouter {
+
+    public interface Subscriber {
+        void onMessage(WsMessage message);
+    }
+
+    private static final class Subscription {
+        final int mType; // topic 订阅为 -1
+        final ByteString mPrefix;
+        final Subscriber mSubscriber;
+
+        Subscription(int type, ByteString prefix, Subscriber subscriber) {
+            mType = type;
+            mPrefix = prefix;
+            mSubscriber = subscriber;
+        }
+    }
+
+    /**
+     * 编译好的路由表，创建后不再修改
+     *
+     * 前缀树展开成数组：节点 n 的子节点是 mLabels / mChildren 的 [mEdgeStart[n], mEdgeStart[n + 1])，按字节值排序；
+     * mMatched[n] 是前缀为根到 n 这条路径的全部订阅者（包括祖先节点上的），没有时为 null
+     */
+    private static final class Table {
+        final Subscriber[][] mByType = new Subscriber[WsFrameCodec.TYPE_USER_MAX + 1][];
+        int[] mEdgeStart;
+        byte[] mLabels;
+        int[] mChildren;
+        Subscriber[][] mMatched;
+    }
+
+    // 编译时的临时节点
+    private static final class Node {
+        final List<Subscriber> mSubscribers = new ArrayList<>();
+        byte[] mLabels = new byte[0];
+        Node[] mChildren = new Node[0];
+
+        Node child(byte label) {
+            int index = Arrays.binarySearch(mLabels, label);
+            if (index >= 0) return mChildren[index];
+            index = -index - 1;
+            Node child = new Node();
+            byte[] labels = new byte[mLabels.length + 1];
+            Node[] children = new Node[labels.length];
+            System.arraycopy(mLabels, 0, labels, 0, index);
+            System.arraycopy(mChildren, 0, children, 0, index);
+            labels[index] = label;
+            children[index] = child;
+            System.arraycopy(mLabels, index, labels, index + 1, mLabels.length - index);
+            System.arraycopy(mChildren, index, children, index + 1, mChildren.length - index);
+            mLabels = labels;
+            mChildren = children;
+            return child;
+        }
+    }
+
+    private final List<Subscription> mSubscriptions = new ArrayList<>();
+    private volatile Table mTable; // 为 null 表示订阅变了，需要重新编译
+    private volatile boolean mEmpty = true;
+
+    WsRouter() {
+    }
+
+    /** 订阅某个类型的帧，type 取值 0 ~ 127 */
+    public void subscribe(int type, Subscriber subscriber) {
+        if (type < 0 || type > WsFrameCodec.TYPE_USER_MAX) {
+            throw new IllegalArgumentException("type out of range: " + type);
+        }
+        add(new Subscription(type, null, subscriber));
+    }
+
+    /** 订阅 topic 以 prefix 开头的帧，空字符串匹配所有带 topic 的帧 */
+    public void subscribe(String prefix, Subscriber subscriber) {
+        add(new Subscription(-1, ByteString.encodeUtf8(prefix), subscriber));
+    }
+
+    /** 取消这个订阅者的所有订阅 */
+    public synchronized void unsubscribe(Subscriber subscriber) {
+        for (int i = mSubscriptions.size() - 1; i >= 0; i--) {
+            if (mSubscriptions.get(i).mSubscriber == subscriber) mSubscriptions.remove(i);
+        }
+        mEmpty = mSubscriptions.isEmpty();
+        mTable = null;
+    }
+
+    private synchronized void add(Subscription subscription) {
+        mSubscriptions.add(subscription);
+        mEmpty = false;
+        mTable = null;
+    }
+
+    /**
+     * 在读线程上调用，只读帧头
+     * @return 要投递的订阅者；null 表示没有订阅者
+     */
+    Subscriber[] route(WsMessage message) {
+        if (mEmpty) return null;
+        Table table = mTable;
+        if (table == null) table = compile();
+        if (message.mTopicSource != null) {
+            Subscriber[] matched = match(table, message.mTopicSource, message.mTopicOffset, message.mTopicLength);
+            if (matched != null) return matched;
+        }
+        return table.mByType[message.type()];
+    }
+
+    private static Subscriber[] match(Table table, ByteString source, int offset, int length) {
+        Subscriber[] matched = table.mMatched[0];
+        int node = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            node = findChild(table, node, source.getByte(i));
+            if (node < 0) break;
+            if (table.mMatched[node] != null) matched = table.mMatched[node];
+        }
+        return matched;
+    }
+
+    private static int findChild(Table table, int node, byte label) {
+        int low = table.mEdgeStart[node];
+        int high = table.mEdgeStart[node + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            byte value = table.mLabels[mid];
+            if (value < label) {
+                low = mid + 1;
+            } else if (value > label) {
+                high = mid - 1;
+            } else {
+                return table.mChildren[mid];
+            }
+        }
+        return -1;
+    }
+
+    private synchronized Table compile() {
+        if (mTable != null) return mTable;
+        Table table = new Table();
+        Node root = new Node();
+        List<List<Subscriber>> byType = new ArrayList<>();
+        for (int i = 0; i <= WsFrameCodec.TYPE_USER_MAX; i++) {
+            byType.add(null);
+        }
+        for (Subscription subscription : mSubscriptions) {
+            if (subscription.mPrefix == null) {
+                List<Subscriber> subscribers = byType.get(subscription.mType);
+                if (subscribers == null) byType.set(subscription.mType, subscribers = new ArrayList<>());
+                addOnce(subscribers, subscription.mSubscriber);
+            } else {
+                Node node = root;
+                for (int i = 0; i < subscription.mPrefix.size(); i++) {
+                    node = node.child(subscription.mPrefix.getByte(i));
+                }
+                addOnce(node.mSubscribers, subscription.mSubscriber);
+            }
+        }
+        for (int i = 0; i < byType.size(); i++) {
+            List<Subscriber> subscribers = byType.get(i);
+            if (subscribers != null) table.mByType[i] = subscribers.toArray(new Subscriber[subscribers.size()]);
+        }
+        flatten(root, table);
+        mTable = table;
+        return table;
+    }
+
+    // 按层次遍历给节点编号，同一节点的子节点编号连续
+    private static void flatten(Node root, Table table) {
+        List<Node> nodes = new ArrayList<>();
+        List<List<Subscriber>> inherited = new ArrayList<>();
+        nodes.add(root);
+        inherited.add(new ArrayList<>(root.mSubscribers));
+        for (int i = 0; i < nodes.size(); i++) {
+            Node node = nodes.get(i);
+            for (Node child : node.mChildren) {
+                List<Subscriber> subscribers = new ArrayList<>(inherited.get(i));
+                for (Subscriber subscriber : child.mSubscribers) {
+                    addOnce(subscribers, subscriber);
+                }
+                nodes.add(child);
+                inherited.add(subscribers);
+            }
+        }
+        int count = nodes.size();
+        table.mEdgeStart = new int[count + 1];
+        table.mLabels = new byte[count - 1];
+        table.mChildren = new int[count - 1];
+        table.mMatched = new Subscriber[count][];
+        int edge = 0;
+        int next = 1;
+        for (int i = 0; i < count; i++) {
+            Node node = nodes.get(i);
+            table.mEdgeStart[i] = edge;
+            for (int j = 0; j < node.mChildren.length; j++) {
+                table.mLabels[edge] = node.mLabels[j];
+                table.mChildren[edge] = next++;
+                edge++;
+            }
+            // 只有自己有订阅的节点才记录，查找时保留路径上最深的一个
+            if (!node.mSubscribers.isEmpty()) {
+                List<Subscriber> subscribers = inherited.get(i);
+                table.mMatched[i] = subscribers.toArray(new Subscriber[subscribers.size()]);
+            }
+        }
+        table.mEdgeStart[count] = edge;
+    }
+
+    private static void addOnce(List<Subscriber> subscribers, Subscriber subscriber) {
+        if (!subscribers.contains(subscriber)) subscribers.add(subscriber);
+    }
+}
@@ -0,0 +1,114 @@
+package com.tbj.call.ws;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okio.Buffer;
+import okio.ByteString;
+
+/**
+ * 请求/响应：同一个连接上可以同时有任意多个调用在途，按调用 id 对应响应
+ *
+ *   请求 TYPE_RPC_REQUEST：  | id(varint) | method 长度(varint) | method(UTF-8) | payload |
+ *   响应 TYPE_RPC_RESPONSE： | id(varint) | status(1) | payload |，status 为 0 表示成功，否则 payload 是 UTF-8 的错误信息
+ *
+ * 在途调用放在 ConcurrentHashMap 里，读线程收到响应、调用方取消、超时三者谁先拿到谁完成；
+ * 超时用共用的 WsTimerWheel，WsCall 本身就是时间轮节点
+ */
+final class WsRpc {
+
+    static final int STATUS_OK = 0;
+
+    interface Sender {
+        boolean isConnected();
+
+        boolean send(WsFrame frame);
+    }
+
+    private final ConcurrentHashMap<Integer, WsCall> mCalls = new ConcurrentHashMap<>();
+    private final AtomicInteger mNextId = new AtomicInteger();
+    private final WsTimerWheel mWheel;
+    private final Executor mExecutor;
+    private final Sender mSender;
+
+    WsRpc(WsTimerWheel wheel, Executor executor, Sender sender) {
+        mWheel = wheel;
+        mExecutor = executor;
+        mSender = sender;
+    }
+
+    WsCall call(String method, ByteString payload, long timeout) {
+        // 帧里的 id 是 varint，保持在 31 位以内
+        int id = mNextId.incrementAndGet() & Integer.MAX_VALUE;
+        WsCall call = new WsCall(this, id, method, mExecutor);
+        mCalls.put(id, call);
+        mWheel.schedule(call, timeout);
+
+        Buffer buffer = new Buffer();
+        WsFrameCodec.writeVarint(buffer, id);
+        ByteString name = ByteString.encodeUtf8(method);
+        WsFrameCodec.writeVarint(buffer, name.size());
+        buffer.write(name);
+        buffer.write(payload);
+        // 请求不进离线发件箱：重连后才发出去时调用方可能早已超时，甚至进程已经重启，服务端执行了也没人等结果
+        if (!mSender.isConnected()) {
+            fail(call, new IOException("not connected"));
+        } else if (!mSender.send(WsFrame.message(WsFrameCodec.TYPE_RPC_REQUEST, buffer.readByteString()))) {
+            fail(call, new IOException("send queue full"));
+        }
+        return call;
+    }
+
+    /**
+     * 处理 TYPE_RPC_RESPONSE，在读线程上调用；已经超时或取消的调用直接忽略
+     */
+    void onResponse(WsMessage message) {
+        ByteString source = message.mSource;
+        int end = message.mOffset + message.mLength;
+        long value = WsFrameCodec.readVarint(source, message.mOffset);
+        if (value < 0) return;
+        int pos = (int) (value >>> 32);
+        if (pos >= end) return;
+        WsCall call = mCalls.remove((int) value);
+        if (call == null) return;
+        mWheel.cancel(call);
+        int status = source.getByte(pos++) & 0xff;
+        ByteString body = source.substring(pos, end);
+        if (status == STATUS_OK) {
+            call.complete(body, null);
+        } else {
+            call.complete(null, new WsCall.RemoteException(status, body.utf8()));
+        }
+    }
+
+    int inFlightCount() {
+        return mCalls.size();
+    }
+
+    /** 连接释放时让所有在途调用失败 */
+    void shutdown() {
+        for (WsCall call : mCalls.values()) {
+            fail(call, new IOException("WsManager released"));
+        }
+    }
+
+    void onTimeout(WsCall call) {
+        if (mCalls.remove(call.getId(), call)) {
+            call.complete(null, new TimeoutException(call.getMethod() + " timed out"));
+        }
+    }
+
+    void remove(WsCall call) {
+        if (mCalls.remove(call.getId(), call)) mWheel.cancel(call);
+    }
+
+    private void fail(WsCall call, Exception error) {
+        if (mCalls.remove(call.getId(), call)) {
+            mWheel.cancel(call);
+            call.complete(null, error);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.tbj.call.ws;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * ws 包内共用的定时线程，重连、心跳等定时任务都放在这里，不占用主线程的 Looper
+ */
+final class WsScheduler {
+
+    private static volatile ScheduledExecutorService sScheduler;
+
+    private WsScheduler() {
+    }
+
+    static ScheduledExecutorService get() {
+        if (sScheduler == null) {
+            synchronized (WsScheduler.class) {
+                if (sScheduler == null) {
+                    sScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread thread = new Thread(r, "ws-scheduler");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return sScheduler;
+    }
+}
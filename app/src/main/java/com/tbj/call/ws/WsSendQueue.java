@@ -0,0 +1,426 @@
+package com.tbj.call.ws;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.WebSocket;
+import okio.ByteString;
+
+/**
+ * 发送管道：任意线程非阻塞入队，由单个 drainer 线程写到 OkHttp 的 WebSocket.send
+ *
+ * OkHttp 的 WebSocket 内部队列超过 16M 会直接关闭连接，所以这里用 queueSize() 做高低水位：
+ * 超过高水位暂停写出，降到低水位以下再继续。OkHttp 的队列是先进先出的，已经交给它的数据会挡在后来的信令前面，
+ * 所以默认水位压得比较低，优先级的排序主要在这里的内存队列里完成
+ *
+ * 配置了 WsOutbox 时，未连接期间（以及发件箱还没回放完时）的消息写入发件箱，保证断线不丢、顺序不乱；
+ * 重连后先写完内存队列里断线前留下的消息，再按顺序回放发件箱（回放不区分优先级）。
+ * 已连接时 HIGH 不排在回放后面，直接进自己的队列，比发件箱里的积压先写出。
+ * 控制帧（type 大于 TYPE_USER_MAX）只属于当前连接，不进发件箱，没有可写的连接时直接丢弃
+ *
+ * 每个优先级（WsPriority）一组队列（band），band 内每个逻辑通道（WsChannel）一个队列（lane），主通道是 lane 0：
+ * - band 之间按 WsPriority.STRICT / WEIGHTED 调度
+ * - band 内按字节数做 deficit round robin，一个通道的大量数据不会饿死其它通道
+ * - 超过 fragmentSize 的带类型消息按 FLAG_FRAGMENT 切成分片，每次只写一片，高优先级的消息可以插在分片之间
+ * - HIGH 不受高水位限制，最多超出 URGENT_ALLOWANCE；暂停期间入队的 HIGH 会立刻单独写出
+ */
+final class WsSendQueue {
+
+    static final int DEFAULT_CAPACITY = 1024;
+    static final long DEFAULT_HIGH_WATERMARK = 256 * 1024;
+    static final long DEFAULT_LOW_WATERMARK = 64 * 1024;
+    static final int DEFAULT_FRAGMENT_SIZE = 16 * 1024;
+
+    private static final long WATERMARK_CHECK_INTERVAL = 20; // ms
+    private static final int QUANTUM = 16 * 1024;            // 每个 lane 每轮可以写出的字节数
+    private static final long URGENT_ALLOWANCE = 64 * 1024;  // HIGH 最多超出高水位多少字节
+
+    interface Callback {
+        /** 当前可写的 WebSocket，未连接时返回 null */
+        WebSocket writableWebSocket();
+
+        void onSendResult(int result, WsFrame frame);
+    }
+
+    private static final class Lane {
+        final int mChannel;
+        final BoundedMpscQueue<WsFrame> mQueue;
+        long mDeficit;          // 以下只在发送线程上读写
+        byte[] mPending;        // 正在分片写出的队头 payload，写完最后一片才出队
+        int mOffset;
+        WebSocket mPendingSocket;
+
+        Lane(int channel, int capacity) {
+            mChannel = channel;
+            mQueue = new BoundedMpscQueue<>(capacity);
+        }
+    }
+
+    private final class Band {
+        volatile Lane[] mLanes = {new Lane(0, mCapacity)}; // 写时复制，lane 0 是主通道
+        int mCursor;            // 轮转位置，只在发送线程上读写
+        boolean mTurnStarted;
+        long mCredit;           // WEIGHTED 的剩余额度，只在发送线程上读写
+
+        Lane findLane(int channel) {
+            for (Lane lane : mLanes) {
+                if (lane.mChannel == channel) return lane;
+            }
+            return null;
+        }
+
+        boolean isEmpty() {
+            for (Lane lane : mLanes) {
+                if (!lane.mQueue.isEmpty()) return false;
+            }
+            return true;
+        }
+
+        int size() {
+            int size = 0;
+            for (Lane lane : mLanes) {
+                size += lane.mQueue.size();
+            }
+            return size;
+        }
+
+        /**
+         * deficit round robin：轮到某个 lane 时给它 QUANTUM 字节的额度，额度够就写出一个单元（整帧或一个分片），不够就轮到下一个
+         * @return 扣过额度的 lane，band 为空时返回 null
+         */
+        Lane pick() {
+            Lane[] lanes = mLanes;
+            int count = lanes.length;
+            int empty = 0;
+            while (empty < count) {
+                if (mCursor >= count) {
+                    mCursor = 0;
+                    mTurnStarted = false;
+                }
+                Lane lane = lanes[mCursor];
+                WsFrame head = lane.mQueue.peek();
+                if (head == null) {
+                    lane.mDeficit = 0;
+                    empty++;
+                    nextLane();
+                    continue;
+                }
+                empty = 0;
+                if (!mTurnStarted) {
+                    lane.mDeficit += QUANTUM;
+                    mTurnStarted = true;
+                }
+                long unit = unitSize(lane, head);
+                if (unit <= lane.mDeficit) {
+                    lane.mDeficit -= unit;
+                    return lane;
+                }
+                nextLane();
+            }
+            return null;
+        }
+
+        private void nextLane() {
+            mCursor++;
+            mTurnStarted = false;
+        }
+    }
+
+    private final int mCapacity;
+    private final Band[] mBands = new Band[WsPriority.COUNT];
+    private final int mScheduling;
+    private final int[] mWeights;
+    private final int mFragmentSize;
+    private final long mHighWatermark;
+    private final long mLowWatermark;
+    private final Callback mCallback;
+    private final WsOutbox mOutbox;
+    private final WsFrameCodec mCodec = new WsFrameCodec(); // 只在发送线程上使用
+    private final WsCompressor mCompressor;
+    private final ScheduledExecutorService mDrainer;
+
+    private final AtomicBoolean mDrainScheduled = new AtomicBoolean();
+    private volatile boolean mPaused; // 超过高水位，等待降到低水位
+
+    private final Runnable mDrainRunnable = this::drain;
+    private final Runnable mUrgentRunnable = this::drainUrgent;
+
+    WsSendQueue(String name, int capacity, long highWatermark, long lowWatermark, int scheduling, int[] weights,
+                int fragmentSize, WsOutbox outbox, WsCompressor compressor, Callback callback) {
+        mCapacity = capacity;
+        for (int i = 0; i < mBands.length; i++) {
+            mBands[i] = new Band();
+        }
+        mScheduling = scheduling;
+        mWeights = weights.clone();
+        mFragmentSize = Math.max(1, fragmentSize);
+        mHighWatermark = highWatermark;
+        mLowWatermark = Math.min(lowWatermark, highWatermark);
+        mCallback = callback;
+        mOutbox = outbox;
+        mCompressor = compressor;
+        mDrainer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ws-send " + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** 非阻塞入队，队满返回 false */
+    boolean enqueue(WsFrame frame) {
+        if (frame.getType() > WsFrameCodec.TYPE_USER_MAX && mCallback.writableWebSocket() == null) {
+            mCallback.onSendResult(WsSendResult.DROPPED, frame);
+            return false;
+        }
+        // 可靠消息由 WsAckTracker 负责断线重发，通道号重启后无效，控制帧只属于当前连接，这几种都不进发件箱
+        if (mOutbox != null && !frame.isReliable() && frame.getChannel() == 0 && frame.getType() <= WsFrameCodec.TYPE_USER_MAX
+                && (mCallback.writableWebSocket() == null
+                        || (mOutbox.hasPending() && frame.getPriority() != WsPriority.HIGH))) {
+            if (!mOutbox.append(frame)) {
+                mCallback.onSendResult(WsSendResult.DROPPED, frame);
+                return false;
+            }
+            mCallback.onSendResult(WsSendResult.ENQUEUED, frame);
+            scheduleDrain();
+            return true;
+        }
+        frame.mEnqueuedAt = System.nanoTime();
+        Lane lane = mBands[frame.getPriority()].findLane(frame.getChannel());
+        if (lane == null || !lane.mQueue.offer(frame)) {
+            mCallback.onSendResult(WsSendResult.DROPPED, frame);
+            return false;
+        }
+        mCallback.onSendResult(WsSendResult.ENQUEUED, frame);
+        if (mPaused && frame.getPriority() == WsPriority.HIGH) {
+            try {
+                mDrainer.execute(mUrgentRunnable);
+            } catch (RejectedExecutionException e) {
+                // 已经 shutdown
+            }
+        }
+        scheduleDrain();
+        return true;
+    }
+
+    /** 连接建立后调用，把积压的消息写出去 */
+    void flush() {
+        scheduleDrain();
+    }
+
+    /** 为逻辑通道在每个优先级下创建独立的发送队列 */
+    synchronized void addLane(int channel) {
+        for (Band band : mBands) {
+            if (band.findLane(channel) != null) continue;
+            Lane[] lanes = band.mLanes;
+            Lane[] newLanes = new Lane[lanes.length + 1];
+            System.arraycopy(lanes, 0, newLanes, 0, lanes.length);
+            newLanes[lanes.length] = new Lane(channel, mCapacity);
+            band.mLanes = newLanes;
+        }
+    }
+
+    /** 通道关闭，还没写出的消息直接丢弃 */
+    synchronized void removeLane(int channel) {
+        if (channel == 0) return;
+        for (Band band : mBands) {
+            Lane[] lanes = band.mLanes;
+            for (int i = 1; i < lanes.length; i++) {
+                if (lanes[i].mChannel == channel) {
+                    Lane[] newLanes = new Lane[lanes.length - 1];
+                    System.arraycopy(lanes, 0, newLanes, 0, i);
+                    System.arraycopy(lanes, i + 1, newLanes, i, lanes.length - i - 1);
+                    band.mLanes = newLanes;
+                    break;
+                }
+            }
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Band band : mBands) {
+            size += band.size();
+        }
+        return size + (mOutbox != null ? mOutbox.pendingCount() : 0);
+    }
+
+    /** 某个优先级在内存队列里的消息数，不含发件箱 */
+    int depth(int priority) {
+        return mBands[priority].size();
+    }
+
+    void shutdown() {
+        mDrainer.shutdown();
+        if (mOutbox != null) mOutbox.close();
+    }
+
+    private boolean isEmpty() {
+        for (Band band : mBands) {
+            if (!band.isEmpty()) return false;
+        }
+        return mOutbox == null || !mOutbox.hasPending();
+    }
+
+    /** 超过 fragmentSize 的带类型消息按分片计，其它按整帧计 */
+    private long unitSize(Lane lane, WsFrame head) {
+        if (lane.mPending != null) return Math.min(mFragmentSize, lane.mPending.length - lane.mOffset);
+        return isFragmented(head) ? mFragmentSize : head.size();
+    }
+
+    private boolean isFragmented(WsFrame frame) {
+        return frame.isMessage() && frame.getBytes().size() > mFragmentSize;
+    }
+
+    /**
+     * 选出下一个要写的 lane：STRICT 总是先写最高的非空 band；
+     * WEIGHTED 先写有额度的 band 里优先级最高的，所有非空 band 的额度都用完后按权重补充
+     */
+    private Lane pollPriority() {
+        if (mScheduling == WsPriority.STRICT) {
+            for (Band band : mBands) {
+                Lane lane = band.pick();
+                if (lane != null) return lane;
+            }
+            return null;
+        }
+        while (true) {
+            boolean pending = false;
+            for (Band band : mBands) {
+                if (band.mCredit <= 0) {
+                    pending |= !band.isEmpty();
+                    continue;
+                }
+                Lane lane = band.pick();
+                if (lane != null) {
+                    band.mCredit -= unitSize(lane, lane.mQueue.peek());
+                    return lane;
+                }
+            }
+            if (!pending) return null;
+            for (int i = 0; i < mBands.length; i++) {
+                Band band = mBands[i];
+                // 空的 band 不攒额度，否则之后突发的数据会长时间压住其它优先级
+                band.mCredit = band.isEmpty() ? 0 : band.mCredit + (long) mWeights[i] * QUANTUM;
+            }
+        }
+    }
+
+    private void scheduleDrain() {
+        if (isEmpty()) return;
+        if (mDrainScheduled.compareAndSet(false, true)) {
+            try {
+                mDrainer.execute(mDrainRunnable);
+            } catch (RejectedExecutionException e) {
+                mDrainScheduled.set(false);
+            }
+        }
+    }
+
+    private void drain() {
+        mPaused = false;
+        WebSocket webSocket;
+        while ((webSocket = mCallback.writableWebSocket()) != null) {
+            if (webSocket.queueSize() >= mHighWatermark) {
+                // 超过高水位，等 OkHttp 写出一部分后再继续，期间仍然持有 drain 标记
+                mPaused = true;
+                writeUrgent(webSocket);
+                mDrainer.schedule(this::awaitLowWatermark, WATERMARK_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+                return;
+            }
+            Lane lane = pollPriority();
+            if (lane != null) {
+                writeFrom(webSocket, lane);
+                continue;
+            }
+            WsFrame frame = mOutbox != null ? mOutbox.peek() : null;
+            if (frame == null) break;
+            // 写出失败说明连接正在关闭，记录留在发件箱里等下次重连再回放
+            if (!write(webSocket, frame)) break;
+            // 只代表 OkHttp 接受了，之后连接断开也不再回放，见 WsOutbox 的保证范围
+            mOutbox.acknowledge();
+            mCallback.onSendResult(WsSendResult.FLUSHED, frame);
+        }
+        mDrainScheduled.set(false);
+        // 清标记之后可能有新消息入队，再检查一次，避免丢失唤醒
+        if (mCallback.writableWebSocket() != null) scheduleDrain();
+    }
+
+    private void drainUrgent() {
+        WebSocket webSocket = mCallback.writableWebSocket();
+        if (mPaused && webSocket != null) writeUrgent(webSocket);
+    }
+
+    /** 暂停期间只写 HIGH，不超过高水位 + URGENT_ALLOWANCE */
+    private void writeUrgent(WebSocket webSocket) {
+        Band band = mBands[WsPriority.HIGH];
+        while (webSocket.queueSize() < mHighWatermark + URGENT_ALLOWANCE) {
+            Lane lane = band.pick();
+            if (lane == null) return;
+            writeFrom(webSocket, lane);
+        }
+    }
+
+    /**
+     * 写出 lane 队头的一个单元：不分片的消息整帧出队；分片的消息写下一片，最后一片写完（或写出失败）才出队并回调结果
+     */
+    private void writeFrom(WebSocket webSocket, Lane lane) {
+        WsFrame head = lane.mQueue.peek();
+        if (lane.mPending == null && !isFragmented(head)) {
+            lane.mQueue.poll();
+            boolean sent = write(webSocket, head);
+            mCallback.onSendResult(sent ? WsSendResult.FLUSHED : WsSendResult.FAILED, head);
+            return;
+        }
+        if (lane.mPending == null || lane.mPendingSocket != webSocket) {
+            // 新的连接上对端没有之前的分片，从头开始
+            if (lane.mPending == null) lane.mPending = head.getBytes().toByteArray();
+            lane.mOffset = 0;
+            lane.mPendingSocket = webSocket;
+        }
+        byte[] payload = lane.mPending;
+        int length = Math.min(mFragmentSize, payload.length - lane.mOffset);
+        boolean more = lane.mOffset + length < payload.length;
+        // 分片之间可能插入其它消息，打乱压缩上下文的顺序，所以分片不压缩
+        boolean sent = webSocket.send(mCodec.encodeFragment(head.getType(), head.getChannel(), (int) head.getId(),
+                head.getPriority(), more, payload, lane.mOffset, length));
+        lane.mOffset += length;
+        if (sent && more) return;
+        lane.mPending = null;
+        lane.mPendingSocket = null;
+        lane.mQueue.poll();
+        mCallback.onSendResult(sent ? WsSendResult.FLUSHED : WsSendResult.FAILED, head);
+    }
+
+    private boolean write(WebSocket webSocket, WsFrame frame) {
+        if (frame.isText()) return webSocket.send(frame.getText());
+        if (frame.isMessage()) {
+            // 压缩放在发送线程上做，保证 context takeover 的压缩顺序和实际写出顺序一致
+            ByteString payload = frame.getBytes();
+            int flags = 0;
+            if (mCompressor != null && mCompressor.shouldCompress(payload)) {
+                payload = mCompressor.deflate(payload);
+                flags = mCompressor.deflateFlags();
+            }
+            return webSocket.send(mCodec.encode(frame.getType(), flags, frame.getChannel(), (int) frame.getId(), payload));
+        }
+        return webSocket.send(frame.getBytes());
+    }
+
+    private void awaitLowWatermark() {
+        WebSocket webSocket = mCallback.writableWebSocket();
+        if (webSocket == null) {
+            mPaused = false;
+            mDrainScheduled.set(false);
+            return;
+        }
+        if (webSocket.queueSize() > mLowWatermark) {
+            writeUrgent(webSocket);
+            mDrainer.schedule(this::awaitLowWatermark, WATERMARK_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+            return;
+        }
+        drain();
+    }
+}
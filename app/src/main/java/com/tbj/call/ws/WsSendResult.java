@@ -0,0 +1,14 @@
+package com.tbj.call.ws;
+
+/**
+ * 发送结果，通过 WsStatusListener.onSendResult 回调
+ */
+public class WsSendResult {
+
+    public static final int ENQUEUED = 0; // 已进入发送队列
+    public static final int DROPPED = 1;  // 发送队列已满，被丢弃
+    public static final int FLUSHED = 2;  // 已交给 OkHttp 写出
+    public static final int FAILED = 3;   // OkHttp 拒绝（连接正在关闭或其内部队列已满）；可靠消息表示重发次数用完
+    public static final int ACKED = 4;    // 可靠消息已被服务端确认
+
+}
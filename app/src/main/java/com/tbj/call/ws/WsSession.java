@@ -0,0 +1,91 @@
+package com.tbj.call.ws;
+
+import okio.Buffer;
+import okio.ByteString;
+
+/**
+ * 断线续传的会话状态
+ *
+ * - 服务端在连接建立后下发 TYPE_SESSION：| startSeq(varint) | token(UTF-8) |，之后的下行帧带 FLAG_SEQ 顺序编号
+ * - 重连 onOpen 时客户端先发 TYPE_RESUME：| lastSeq(varint) | token(UTF-8) |，lastSeq 及之前的帧都已收到，
+ *   服务端只补发 lastSeq 之后的缺口；token 失效时服务端下发新的 TYPE_SESSION，客户端从 startSeq 重新计数
+ * - 补发和新消息可能交错、重复，按 64 位滑动窗口位图去重：比窗口还旧的序号一律当作重复丢弃
+ *
+ * 只在 OkHttp 读线程上使用，加锁只是为了新旧连接的读线程交替时的可见性
+ */
+final class WsSession {
+
+    static final int WINDOW = 64;
+
+    private String mToken;
+    private int mHighest;    // 收到过的最大序号
+    private long mBitmap;    // 第 i 位表示 mHighest - i 已收到
+    private int mContiguous; // 这个序号及之前的帧都已收到（或已经滑出窗口，不会再补）
+
+    /**
+     * 续传请求帧，还没有会话时返回 null
+     */
+    synchronized ByteString resumeFrame() {
+        if (mToken == null) return null;
+        Buffer buffer = new Buffer();
+        WsFrameCodec.writeVarint(buffer, mContiguous);
+        buffer.writeUtf8(mToken);
+        return WsFrameCodec.encodeFrame(WsFrameCodec.TYPE_RESUME, 0, 0, buffer.readByteString());
+    }
+
+    /**
+     * 处理服务端下发的 TYPE_SESSION
+     * @return true 表示续传成功，沿用原来的序号；false 表示开始了新会话
+     */
+    synchronized boolean onSession(WsMessage message) {
+        ByteString payload = message.payload();
+        long value = WsFrameCodec.readVarint(payload, 0);
+        if (value < 0) return false;
+        String token = payload.substring((int) (value >>> 32)).utf8();
+        if (token.equals(mToken)) return true;
+        mToken = token;
+        mHighest = (int) value;
+        mContiguous = mHighest;
+        mBitmap = 1;
+        return false;
+    }
+
+    /**
+     * 收到一帧，seq 为 0 表示不带序号
+     * @return false 表示重复的帧，应该丢弃
+     */
+    synchronized boolean accept(int seq) {
+        if (seq <= 0) return true;
+        if (seq > mHighest) {
+            int shift = seq - mHighest;
+            mBitmap = shift >= WINDOW ? 1 : mBitmap << shift | 1;
+            mHighest = seq;
+        } else {
+            int offset = mHighest - seq;
+            if (offset >= WINDOW) return false;
+            long bit = 1L << offset;
+            if ((mBitmap & bit) != 0) return false;
+            mBitmap |= bit;
+        }
+        // 滑出窗口的缺口不会再补上，lastSeq 跟着窗口前移
+        if (mHighest - mContiguous > WINDOW) mContiguous = mHighest - WINDOW;
+        while (mContiguous < mHighest && (mBitmap & 1L << (mHighest - mContiguous - 1)) != 0) {
+            mContiguous++;
+        }
+        return true;
+    }
+
+    /**
+     * 撤回 accept 过的序号：这一帧没有交给业务（入站缓冲溢出断开），续传请求会从它开始要
+     */
+    synchronized void reject(int seq) {
+        if (seq <= 0) return;
+        int offset = mHighest - seq;
+        if (offset >= 0 && offset < WINDOW) mBitmap &= ~(1L << offset);
+        if (mContiguous >= seq) mContiguous = seq - 1;
+    }
+
+    synchronized int lastSeq() {
+        return mContiguous;
+    }
+}
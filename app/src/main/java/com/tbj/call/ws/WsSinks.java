@@ -0,0 +1,76 @@
+package com.tbj.call.ws;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import okio.Buffer;
+import okio.Okio;
+import okio.Sink;
+import okio.Timeout;
+
+/**
+ * WsStreamHandler 常用的写入目标
+ */
+public final class WsSinks {
+
+    private WsSinks() {
+    }
+
+    /** 直接写文件，长度未知时也能用 */
+    public static Sink file(File file) throws IOException {
+        return Okio.sink(file);
+    }
+
+    /**
+     * 写到文件的内存映射区域，不经过 FileOutputStream 的系统调用；需要事先知道长度（WsTransfer.getLength），
+     * 长度未知时退回 file
+     */
+    public static Sink mapped(File file, long length) throws IOException {
+        if (length < 0 || length > Integer.MAX_VALUE) return file(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+            // 映射建立后关闭 channel 不影响映射
+            return new MappedSink(raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length));
+        }
+    }
+
+    private static final class MappedSink implements Sink {
+
+        private final MappedByteBuffer mMapped;
+        private final byte[] mScratch = new byte[8 * 1024];
+
+        MappedSink(MappedByteBuffer mapped) {
+            mMapped = mapped;
+        }
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+            if (byteCount > mMapped.remaining()) {
+                throw new IOException("stream longer than declared, remaining " + mMapped.remaining());
+            }
+            while (byteCount > 0) {
+                int read = source.read(mScratch, 0, (int) Math.min(mScratch.length, byteCount));
+                if (read < 0) throw new IOException("source exhausted");
+                mMapped.put(mScratch, 0, read);
+                byteCount -= read;
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+
+        @Override
+        public void close() {
+            mMapped.force();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.tbj.call.ws;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 连接状态机，状态保存在 AtomicInteger 里，所有迁移都先查表再 CAS
+ *
+ * OkHttp 读线程、主线程、网络变化线程、重连线程可能同时触发迁移，只有 CAS 成功的一方去执行对应动作，
+ * 例如同时到来的服务端关闭和网络切换只会产生一次 newWebSocket
+ *
+ *   DISCONNECTED -> CONNECTING / RECONNECTING
+ *   RECONNECTING -> CONNECTING / CLOSE
+ *   CONNECTING   -> CONNECTED / RECONNECTING / CLOSING / CLOSE
+ *   CONNECTED    -> RECONNECTING / CLOSING / CLOSE
+ *   CLOSING      -> CLOSE / CONNECTING
+ *   CLOSE        -> CONNECTING / RECONNECTING
+ *
+ * WsManager 里实际发生的迁移：
+ * - DISCONNECTED 只是初始状态，startConnect 进入 CONNECTING
+ * - onOpen：CONNECTING -> CONNECTED；连接断开（onClosing / onClosed / onFailure / 心跳判定已死 / 服务端要求）
+ *   以及网络变化：-> RECONNECTING，退避结束后 RECONNECTING -> CONNECTING
+ * - stopConnect：连接中或已连接 -> CLOSING，等这个连接的 onClosed 或 onFailure（包括 cancel）进入 CLOSE；
+ *   等待重连时没有连接要关，直接 RECONNECTING -> CLOSE。stopConnect 之后到达的 onClosing 不改变状态
+ * - stopConnect 和连接断开同时发生时，断开的回调可能先于 CLOSING 看到 mManualClose，这时从 CONNECTING / CONNECTED 直接进入 CLOSE
+ * - CLOSING / CLOSE -> CONNECTING 对应 stopConnect 之后再 startConnect：新连接不用等旧连接的关闭握手完成
+ */
+final class WsStateMachine {
+
+    interface Listener {
+        void onStateChanged(int from, int to);
+    }
+
+    private static final int[] ALLOWED = new int[6];
+
+    static {
+        allow(WsStatus.DISCONNECTED, WsStatus.CONNECTING, WsStatus.RECONNECTING);
+        allow(WsStatus.RECONNECTING, WsStatus.CONNECTING, WsStatus.CLOSE);
+        allow(WsStatus.CONNECTING, WsStatus.CONNECTED, WsStatus.RECONNECTING, WsStatus.CLOSING, WsStatus.CLOSE);
+        allow(WsStatus.CONNECTED, WsStatus.RECONNECTING, WsStatus.CLOSING, WsStatus.CLOSE);
+        allow(WsStatus.CLOSING, WsStatus.CLOSE, WsStatus.CONNECTING);
+        allow(WsStatus.CLOSE, WsStatus.CONNECTING, WsStatus.RECONNECTING);
+    }
+
+    private static void allow(int from, int... to) {
+        for (int state : to) {
+            ALLOWED[from] |= 1 << state;
+        }
+    }
+
+    static boolean isAllowed(int from, int to) {
+        return from >= 0 && from < ALLOWED.length && (ALLOWED[from] & (1 << to)) != 0;
+    }
+
+    private final AtomicInteger mState = new AtomicInteger(WsStatus.DISCONNECTED);
+    private final Listener mListener;
+
+    WsStateMachine(Listener listener) {
+        mListener = listener;
+    }
+
+    int get() {
+        return mState.get();
+    }
+
+    /**
+     * 只有当前状态是 from 且迁移合法时才成功
+     */
+    boolean transition(int from, int to) {
+        if (!isAllowed(from, to) || !mState.compareAndSet(from, to)) return false;
+        mListener.onStateChanged(from, to);
+        return true;
+    }
+
+    /**
+     * 从当前任意状态迁移到 to，当前状态不允许迁移时失败
+     * @return 迁移前的状态，失败返回 -1
+     */
+    int moveTo(int to) {
+        while (true) {
+            int from = mState.get();
+            if (!isAllowed(from, to)) return -1;
+            if (mState.compareAndSet(from, to)) {
+                mListener.onStateChanged(from, to);
+                return from;
+            }
+        }
+    }
+}
@@ -8,13 +8,30 @@ package com.tbj.call.ws;
   2 - 表示连接正在进行关闭。
   3 - 表示连接已经关闭或者连接不能打开。
 
+  在此基础上增加：
+  4 - 正在建立连接（已调用 newWebSocket，还没有 onOpen）。
+  5 - 等待重连（已安排退避重连，还没有开始连接）。
+
  */
-class WsStatus {
+public class WsStatus {
 
-  final static int DISCONNECTED = 0;
-  final static int CONNECTED = 1;
-  final static int CLOSING = 2;
-  final static int CLOSE = 3;
+  public final static int DISCONNECTED = 0;
+  public final static int CONNECTED = 1;
+  public final static int CLOSING = 2;
+  public final static int CLOSE = 3;
+  public final static int CONNECTING = 4;
+  public final static int RECONNECTING = 5;
 
-}
+  public static String name(int status) {
+    switch (status) {
+      case DISCONNECTED: return "DISCONNECTED";
+      case CONNECTED: return "CONNECTED";
+      case CLOSING: return "CLOSING";
+      case CLOSE: return "CLOSE";
+      case CONNECTING: return "CONNECTING";
+      case RECONNECTING: return "RECONNECTING";
+      default: return "UNKNOWN(" + status + ")";
+    }
+  }
 
+}
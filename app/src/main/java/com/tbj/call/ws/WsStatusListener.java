@@ -1,5 +1,7 @@
 package com.tbj.call.ws;
 
+import java.util.List;
+
 import okhttp3.Response;
 import okio.ByteString;
 
@@ -17,10 +19,31 @@ public abstract class WsStatusListener {
   public void onMessage(ByteString bytes) {
   }
 
+  /**
+   * 开启 WsManager.Builder.binaryCodec 后二进制消息按帧解码后回调，message 只在回调期间有效
+   */
+  public void onMessage(WsMessage message) {
+  }
+
+  /**
+   * 开启 WsManager.Builder.batch 后，一个窗口内的文本帧合并成一次回调；默认逐条转给 onMessage(String)
+   */
+  public void onMessages(List<String> texts) {
+    for (int i = 0, size = texts.size(); i < size; i++) {
+      onMessage(texts.get(i));
+    }
+  }
+
   public void onReconnect() {
 
   }
 
+  /**
+   * 连接状态变化，取值见 WsStatus；同一连接的状态变化按发生顺序回调
+   */
+  public void onStateChanged(int oldState, int newState) {
+  }
+
   public void onClosing(int code, String reason) {
   }
 
@@ -30,4 +53,10 @@ public abstract class WsStatusListener {
 
   public void onFailure(Throwable t, Response response) {
   }
+
+  /**
+   * 发送结果，result 取值见 WsSendResult；没有覆写时 WsManager 不会分发这个回调
+   */
+  public void onSendResult(int result, WsFrame frame) {
+  }
 }
@@ -0,0 +1,20 @@
+package com.tbj.call.ws;
+
+import java.io.IOException;
+
+import okio.Sink;
+
+/**
+ * 接收对端发来的流，通过 WsManager.Builder.streamHandler 设置
+ */
+public interface WsStreamHandler {
+
+    /**
+     * 对端开始发送一个流，在 OkHttp 读线程上调用，不要做耗时操作；
+     * 返回的 Sink 也在读线程上写入，写完一块才给对端补充额度，磁盘慢时自然形成背压。
+     * 可以在这里调用 transfer.whenComplete 等待接收结果
+     *
+     * @return 写入目标，例如 WsSinks.file / WsSinks.mapped；返回 null 表示拒绝
+     */
+    Sink onStreamOpen(WsTransfer transfer) throws IOException;
+}
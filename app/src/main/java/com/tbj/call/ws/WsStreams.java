@@ -0,0 +1,359 @@
+package com.tbj.call.ws;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okio.Buffer;
+import okio.ByteString;
+import okio.Sink;
+import okio.Source;
+
+/**
+ * 流式传输：发送方按块从 Source 读、接收方按块写进 Sink，两边内存占用只和块大小、窗口有关，和消息总长度无关
+ *
+ *   TYPE_STREAM_OPEN：   | id(varint) | type(1) | length(8)，-1 表示未知 |
+ *   TYPE_STREAM_DATA：   | id(varint) | data |
+ *   TYPE_STREAM_END：    | id(varint) | status(1) |
+ *   TYPE_STREAM_CREDIT： | id(varint) | bytes(varint) |
+ *
+ * - 流量控制：发送方最多有 window 字节没被对端确认，接收方每写完一块回 CREDIT；读 Source 在 ws-stream 线程上，不阻塞调用方
+ * - END 的 status：发送方发 DONE / CANCELLED，接收方回 RECEIVED（全部写入并关闭 Sink）/ REJECTED；
+ *   两边的 id 各自分配，按 status 区分是对端的发送流还是自己的发送流
+ * - 接收方的 CREDIT、END 走 HIGH 优先级，不会排在大块数据后面
+ * - 流绑定在一条连接上，断线或网络切换时所有传输失败，由业务决定是否重新发送
+ */
+final class WsStreams {
+
+    static final int DEFAULT_CHUNK_SIZE = WsSendQueue.DEFAULT_FRAGMENT_SIZE - 8; // 加上 id 不超过分片大小，一块正好一帧
+    static final int DEFAULT_WINDOW = 256 * 1024;
+
+    static final int STATUS_DONE = 0;
+    static final int STATUS_CANCELLED = 1;
+    static final int STATUS_RECEIVED = 2;
+    static final int STATUS_REJECTED = 3;
+
+    private static final String TAG = "MockWebSocket";
+    private static final long RETRY_DELAY = 20; // 发送队列满时重试，ms
+
+    interface Sender {
+        boolean isConnected();
+
+        boolean send(WsFrame frame);
+    }
+
+    private final ConcurrentHashMap<Integer, WsTransfer> mOutgoing = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, WsTransfer> mIncoming = new ConcurrentHashMap<>();
+    private final AtomicInteger mNextId = new AtomicInteger();
+    private final Executor mExecutor;
+    private final WsStreamHandler mHandler;
+    private final int mChunkSize;
+    private final int mWindow;
+    private final Sender mSender;
+    private final ScheduledExecutorService mPump;
+
+    private final Buffer mPumpBuffer = new Buffer(); // 只在 ws-stream 线程上使用
+    private final Buffer mSinkBuffer = new Buffer(); // 以下只在读线程上使用
+    private byte[] mChunk = new byte[DEFAULT_CHUNK_SIZE];
+
+    WsStreams(String name, Executor executor, WsStreamHandler handler, int chunkSize, int window, Sender sender) {
+        mExecutor = executor;
+        mHandler = handler;
+        mChunkSize = chunkSize;
+        mWindow = Math.max(window, chunkSize);
+        mSender = sender;
+        mPump = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ws-stream " + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    WsTransfer send(int type, Source source, long length, int priority) {
+        // 帧里的 id 是 varint，保持在 31 位以内
+        int id = mNextId.incrementAndGet() & Integer.MAX_VALUE;
+        WsTransfer transfer = new WsTransfer(this, id, type, length, false, mExecutor);
+        transfer.mSource = source;
+        transfer.mPriority = priority;
+        mOutgoing.put(id, transfer);
+        Buffer buffer = new Buffer();
+        WsFrameCodec.writeVarint(buffer, id);
+        buffer.writeByte(type);
+        buffer.writeLong(length);
+        // 未连接时不进离线发件箱，流只属于当前连接
+        if (!mSender.isConnected()) {
+            post(() -> finishOutgoing(transfer, -1, new IOException("not connected")));
+        } else if (!mSender.send(WsFrame.message(WsFrameCodec.TYPE_STREAM_OPEN, buffer.readByteString(), priority))) {
+            post(() -> finishOutgoing(transfer, -1, new IOException("send queue full")));
+        } else {
+            post(() -> pump(transfer));
+        }
+        return transfer;
+    }
+
+    /**
+     * 在 ws-stream 线程上，额度和发送队列允许时持续读 Source 写出
+     */
+    private void pump(WsTransfer transfer) {
+        if (mOutgoing.get(transfer.getId()) != transfer) return;
+        while (true) {
+            if (transfer.mPendingFrame == null) {
+                if (transfer.mEndSent) return;
+                if (transfer.mSent - transfer.mGranted + mChunkSize > mWindow) return; // 等对端的 CREDIT
+                long read;
+                try {
+                    read = readChunk(transfer);
+                } catch (IOException e) {
+                    finishOutgoing(transfer, STATUS_CANCELLED, e);
+                    return;
+                }
+                if (read == 0) {
+                    transfer.mPendingFrame = WsFrame.message(WsFrameCodec.TYPE_STREAM_END,
+                            endPayload(transfer.getId(), STATUS_DONE), transfer.mPriority);
+                } else {
+                    transfer.mPendingFrame = WsFrame.message(WsFrameCodec.TYPE_STREAM_DATA,
+                            mPumpBuffer.readByteString(), transfer.mPriority);
+                }
+                transfer.mPendingBytes = read;
+            }
+            if (!mSender.isConnected()) {
+                finishOutgoing(transfer, -1, new IOException("connection lost"));
+                return;
+            }
+            if (!mSender.send(transfer.mPendingFrame)) {
+                schedule(() -> pump(transfer));
+                return;
+            }
+            if (transfer.mPendingBytes == 0) transfer.mEndSent = true;
+            transfer.mSent += transfer.mPendingBytes;
+            transfer.mPendingFrame = null;
+        }
+    }
+
+    /** 读一块到 mPumpBuffer（前面带 id），返回读到的字节数，0 表示 Source 已经读完 */
+    private long readChunk(WsTransfer transfer) throws IOException {
+        mPumpBuffer.clear();
+        WsFrameCodec.writeVarint(mPumpBuffer, transfer.getId());
+        long header = mPumpBuffer.size();
+        long remaining = mChunkSize;
+        while (remaining > 0) {
+            long read = transfer.mSource.read(mPumpBuffer, remaining);
+            if (read < 0) break;
+            remaining -= read;
+        }
+        return mPumpBuffer.size() - header;
+    }
+
+    /** 在 ws-stream 线程上调用；endStatus 为 -1 表示不通知对端 */
+    private void finishOutgoing(WsTransfer transfer, int endStatus, Exception error) {
+        if (!mOutgoing.remove(transfer.getId(), transfer)) return;
+        closeQuietly(transfer.mSource);
+        transfer.mPendingFrame = null;
+        if (endStatus >= 0) sendControl(WsFrameCodec.TYPE_STREAM_END, endPayload(transfer.getId(), endStatus));
+        transfer.complete(error);
+    }
+
+    /**
+     * 处理 TYPE_STREAM_*，在读线程上调用
+     */
+    void onFrame(WsMessage message) {
+        ByteString source = message.mSource;
+        int end = message.mOffset + message.mLength;
+        long value = WsFrameCodec.readVarint(source, message.mOffset);
+        if (value < 0) return;
+        int id = (int) value;
+        int pos = (int) (value >>> 32);
+        switch (message.mType) {
+            case WsFrameCodec.TYPE_STREAM_OPEN:
+                if (end - pos < 9) return;
+                ByteBuffer header = source.asByteBuffer();
+                onOpen(id, source.getByte(pos) & 0xff, header.getLong(pos + 1));
+                break;
+            case WsFrameCodec.TYPE_STREAM_DATA:
+                onData(id, source, pos, end - pos);
+                break;
+            case WsFrameCodec.TYPE_STREAM_END:
+                if (pos < end) onEnd(id, source.getByte(pos) & 0xff);
+                break;
+            case WsFrameCodec.TYPE_STREAM_CREDIT:
+                long credit = WsFrameCodec.readVarint(source, pos);
+                if (credit >= 0) onCredit(id, (int) credit);
+                break;
+        }
+    }
+
+    private void onOpen(int id, int type, long length) {
+        WsTransfer transfer = new WsTransfer(this, id, type, length, true, mExecutor);
+        Sink sink = null;
+        try {
+            if (mHandler != null) sink = mHandler.onStreamOpen(transfer);
+        } catch (IOException e) {
+            Log.w(TAG, "client stream " + id + " open sink failed", e);
+        }
+        if (sink == null) {
+            sendControl(WsFrameCodec.TYPE_STREAM_END, endPayload(id, STATUS_REJECTED));
+            transfer.complete(new IOException("stream rejected"));
+            return;
+        }
+        transfer.mSink = sink;
+        WsTransfer previous = mIncoming.put(id, transfer);
+        if (previous != null) failIncoming(previous, new IOException("stream id reused"), false);
+    }
+
+    private void onData(int id, ByteString source, int offset, int length) {
+        WsTransfer transfer = mIncoming.get(id);
+        if (transfer == null) return;
+        try {
+            synchronized (transfer) {
+                if (transfer.isDone()) return;
+                if (transfer.getLength() >= 0 && transfer.mTransferred + length > transfer.getLength()) {
+                    throw new IOException("stream longer than declared " + transfer.getLength());
+                }
+                if (length > mChunk.length) mChunk = new byte[length];
+                ByteBuffer buffer = source.asByteBuffer();
+                buffer.position(offset);
+                buffer.get(mChunk, 0, length);
+                mSinkBuffer.write(mChunk, 0, length);
+                transfer.mSink.write(mSinkBuffer, length);
+                transfer.mTransferred += length;
+            }
+        } catch (IOException e) {
+            mSinkBuffer.clear();
+            failIncoming(transfer, e, true);
+            return;
+        }
+        Buffer buffer = new Buffer();
+        WsFrameCodec.writeVarint(buffer, id);
+        WsFrameCodec.writeVarint(buffer, length);
+        sendControl(WsFrameCodec.TYPE_STREAM_CREDIT, buffer.readByteString());
+    }
+
+    private void onEnd(int id, int status) {
+        if (status == STATUS_RECEIVED || status == STATUS_REJECTED) {
+            WsTransfer transfer = mOutgoing.get(id);
+            if (transfer == null) return;
+            IOException error = status == STATUS_REJECTED ? new IOException("stream rejected by peer") : null;
+            post(() -> finishOutgoing(transfer, -1, error));
+            return;
+        }
+        WsTransfer transfer = mIncoming.get(id);
+        if (transfer == null) return;
+        if (status == STATUS_CANCELLED) {
+            failIncoming(transfer, new IOException("stream cancelled by peer"), false);
+            return;
+        }
+        try {
+            synchronized (transfer) {
+                if (transfer.isDone()) return;
+                if (transfer.getLength() >= 0 && transfer.mTransferred != transfer.getLength()) {
+                    throw new IOException("stream truncated at " + transfer.mTransferred + "/" + transfer.getLength());
+                }
+                transfer.mSink.close();
+            }
+        } catch (IOException e) {
+            failIncoming(transfer, e, true);
+            return;
+        }
+        mIncoming.remove(id, transfer);
+        sendControl(WsFrameCodec.TYPE_STREAM_END, endPayload(id, STATUS_RECEIVED));
+        transfer.complete(null);
+    }
+
+    private void onCredit(int id, int bytes) {
+        post(() -> {
+            WsTransfer transfer = mOutgoing.get(id);
+            if (transfer == null) return;
+            transfer.mGranted += bytes;
+            transfer.mTransferred = transfer.mGranted;
+            pump(transfer);
+        });
+    }
+
+    private void failIncoming(WsTransfer transfer, Exception error, boolean reject) {
+        synchronized (transfer) {
+            closeQuietly(transfer.mSink);
+        }
+        if (mIncoming.remove(transfer.getId(), transfer) && reject) {
+            sendControl(WsFrameCodec.TYPE_STREAM_END, endPayload(transfer.getId(), STATUS_REJECTED));
+        }
+        transfer.complete(error);
+    }
+
+    /** WsTransfer.cancel 之后调用 */
+    void onCancelled(WsTransfer transfer) {
+        if (transfer.isIncoming()) {
+            failIncoming(transfer, null, true);
+        } else {
+            post(() -> finishOutgoing(transfer, STATUS_CANCELLED, null));
+        }
+    }
+
+    /** 连接断开或切换，在读线程上调用；所有传输失败 */
+    void onDisconnected() {
+        failAll(new IOException("connection lost"));
+    }
+
+    /** 连接释放时让所有传输失败 */
+    void shutdown() {
+        failAll(new IOException("WsManager released"));
+        // 已经提交的任务会执行完
+        mPump.shutdown();
+    }
+
+    private void failAll(Exception error) {
+        for (WsTransfer transfer : mOutgoing.values()) {
+            post(() -> finishOutgoing(transfer, -1, error));
+        }
+        for (WsTransfer transfer : mIncoming.values()) {
+            failIncoming(transfer, error, false);
+        }
+    }
+
+    int activeCount() {
+        return mOutgoing.size() + mIncoming.size();
+    }
+
+    private static ByteString endPayload(int id, int status) {
+        Buffer buffer = new Buffer();
+        WsFrameCodec.writeVarint(buffer, id);
+        buffer.writeByte(status);
+        return buffer.readByteString();
+    }
+
+    private void sendControl(int type, ByteString payload) {
+        if (mSender.isConnected()) mSender.send(WsFrame.message(type, payload, WsPriority.HIGH));
+    }
+
+    private void post(Runnable task) {
+        try {
+            mPump.execute(task);
+        } catch (RejectedExecutionException e) {
+            // 已经 shutdown
+        }
+    }
+
+    private void schedule(Runnable task) {
+        try {
+            mPump.schedule(task, RETRY_DELAY, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // 已经 shutdown
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.tbj.call.ws;
+
+import java.util.ArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 哈希时间轮：大量短超时（重传、请求超时）共用 ws-scheduler 上的一个 tick 任务，
+ * 而不是每个超时一个 postDelayed / schedule
+ *
+ * - WHEEL_SIZE 个槽，每 TICK 毫秒前进一格，超时按到期 tick 放进对应的槽，超过一圈的记下剩余圈数
+ * - 添加和取消都是 O(1)，Timeout 本身就是链表节点，不额外分配对象
+ * - 没有超时的时候停掉 tick 任务，不会空转
+ *
+ * 精度是 TICK，到期回调在 ws-scheduler 线程上执行，不能做耗时操作
+ */
+final class WsTimerWheel {
+
+    static final long TICK = 50; // ms
+    private static final int WHEEL_SIZE = 512;
+    private static final int MASK = WHEEL_SIZE - 1;
+
+    private static volatile WsTimerWheel sInstance;
+
+    static WsTimerWheel get() {
+        if (sInstance == null) {
+            synchronized (WsTimerWheel.class) {
+                if (sInstance == null) sInstance = new WsTimerWheel(WsScheduler.get());
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * 一个超时，使用方继承它，同一个对象可以反复 schedule
+     */
+    abstract static class Timeout {
+        Timeout mPrev;
+        Timeout mNext;
+        int mSlot = -1;
+        long mRounds;
+
+        /** 在 ws-scheduler 线程上回调 */
+        abstract void onExpired();
+    }
+
+    private final ScheduledExecutorService mScheduler;
+    private final Timeout[] mSlots = new Timeout[WHEEL_SIZE];
+    private final ArrayList<Timeout> mExpired = new ArrayList<>(); // 只在 tick 线程上使用
+    private final Runnable mTickRunnable = this::tick;
+
+    private long mTick;       // 已经处理到的 tick
+    private long mStartNanos; // 第 0 个 tick 对应的时间
+    private int mCount;
+    private ScheduledFuture<?> mTicker;
+
+    WsTimerWheel(ScheduledExecutorService scheduler) {
+        mScheduler = scheduler;
+    }
+
+    /**
+     * delay 毫秒后回调 timeout.onExpired()，已经在轮子上的会先取消
+     */
+    synchronized void schedule(Timeout timeout, long delay) {
+        unlink(timeout);
+        long ticks = Math.max(1, (delay + TICK - 1) / TICK);
+        if (mTicker == null) start();
+        int slot = (int) ((mTick + ticks) & MASK);
+        timeout.mRounds = (ticks - 1) / WHEEL_SIZE;
+        timeout.mSlot = slot;
+        timeout.mPrev = null;
+        timeout.mNext = mSlots[slot];
+        if (mSlots[slot] != null) mSlots[slot].mPrev = timeout;
+        mSlots[slot] = timeout;
+        mCount++;
+    }
+
+    /** @return false 表示不在轮子上（已经到期或没有 schedule 过） */
+    synchronized boolean cancel(Timeout timeout) {
+        return unlink(timeout);
+    }
+
+    synchronized int size() {
+        return mCount;
+    }
+
+    private boolean unlink(Timeout timeout) {
+        int slot = timeout.mSlot;
+        if (slot < 0) return false;
+        if (timeout.mPrev != null) {
+            timeout.mPrev.mNext = timeout.mNext;
+        } else {
+            mSlots[slot] = timeout.mNext;
+        }
+        if (timeout.mNext != null) timeout.mNext.mPrev = timeout.mPrev;
+        timeout.mPrev = null;
+        timeout.mNext = null;
+        timeout.mSlot = -1;
+        mCount--;
+        return true;
+    }
+
+    private void start() {
+        // 时间轴接着上次的 tick 继续，已经在轮子上的槽位不受影响
+        mStartNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(mTick * TICK);
+        mTicker = mScheduler.scheduleAtFixedRate(mTickRunnable, TICK, TICK, TimeUnit.MILLISECONDS);
+    }
+
+    private void tick() {
+        synchronized (this) {
+            // 调度线程被耽误时一次补上落下的 tick
+            long target = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mStartNanos) / TICK;
+            while (mTick < target) {
+                mTick++;
+                expire((int) (mTick & MASK));
+            }
+            if (mCount == 0 && mTicker != null) {
+                mTicker.cancel(false);
+                mTicker = null;
+            }
+        }
+        for (int i = 0, size = mExpired.size(); i < size; i++) {
+            mExpired.get(i).onExpired();
+        }
+        mExpired.clear();
+    }
+
+    private void expire(int slot) {
+        Timeout timeout = mSlots[slot];
+        while (timeout != null) {
+            Timeout next = timeout.mNext;
+            if (timeout.mRounds > 0) {
+                timeout.mRounds--;
+            } else {
+                unlink(timeout);
+                mExpired.add(timeout);
+            }
+            timeout = next;
+        }
+    }
+}
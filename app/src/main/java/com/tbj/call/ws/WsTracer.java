@@ -0,0 +1,172 @@
+package com.tbj.call.ws;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 二进制环形缓冲区的事件追踪，代替热路径上的 Log.i
+ *
+ * - 每个事件固定 5 个 long：序号戳、System.nanoTime()、头（事件类型 | 级别 | 连接 id）、两个数值参数，不拼字符串、不分配对象
+ * - 级别低于 setLevel 的调用只有一次 volatile 读和比较；调用方传的都是基本类型，关闭时没有任何拼接和装箱
+ * - 多线程并发写：getAndIncrement 领取槽位，最后写序号戳；dump 前后两次读序号戳不一致的槽位说明正在被覆盖，直接跳过
+ * - 缓冲区写满后覆盖最旧的事件，dump 到文件后用 WsTraceDecoder（benchmark 模块）离线解码
+ *
+ * 不依赖 Android 类，benchmark 模块里的 WsTraceDecoder 直接编译它，在电脑上解码
+ */
+public final class WsTracer {
+
+    public static final int LEVEL_OFF = 0;
+    public static final int LEVEL_ERROR = 1;
+    /** 连接生命周期：建连、关闭、重连、状态变化（默认） */
+    public static final int LEVEL_INFO = 2;
+    /** 逐条消息的收发，压测时打开 */
+    public static final int LEVEL_DEBUG = 3;
+
+    public static final int EVENT_CONNECT = 1;          // a = 0 首次 / 1 重连 / 2 网络切换预连接
+    public static final int EVENT_OPEN = 2;             // a = 建连耗时（微秒）
+    public static final int EVENT_TEXT_IN = 3;          // a = 字符数
+    public static final int EVENT_BINARY_IN = 4;        // a = 字节数
+    public static final int EVENT_FRAME_IN = 5;         // a = 字节数，b = 帧类型
+    public static final int EVENT_SENT = 6;             // a = 字节数，b = 帧类型（文本、原始二进制为 -1）
+    public static final int EVENT_DROPPED = 7;          // a = 字节数
+    public static final int EVENT_CLOSING = 8;          // a = code
+    public static final int EVENT_CLOSED = 9;           // a = code
+    public static final int EVENT_FAILURE = 10;
+    public static final int EVENT_RECONNECT = 11;       // a = 原因 WsMetricsSnapshot.CAUSE_*，b = 延迟（毫秒）
+    public static final int EVENT_STATE = 12;           // a = 原状态，b = 新状态
+    public static final int EVENT_HEARTBEAT_DEAD = 13;  // a = 连续丢失次数
+    public static final int EVENT_SERVER_SEND = 14;     // mock 服务端下发，a = 内容，b = 字符数
+    public static final int EVENT_INBOUND_OVERFLOW = 15; // 入站缓冲溢出，a = WsInbound 的策略
+
+    static final int EVENT_COUNT = 16;
+
+    private static final String[] EVENT_NAMES = {"unknown", "connect", "open", "text_in", "binary_in", "frame_in",
+            "sent", "dropped", "closing", "closed", "failure", "reconnect", "state", "heartbeat_dead", "server_send",
+            "inbound_overflow"};
+    private static final String[] LEVEL_NAMES = {"OFF", "E", "I", "D"};
+
+    public static final int DEFAULT_CAPACITY = 16 * 1024; // 事件数，约 640KB
+
+    static final int FILE_MAGIC = 0x57535452; // "WSTR"
+    static final int FILE_VERSION = 1;
+
+    private static final int WORDS = 5;
+
+    private static volatile int sLevel = LEVEL_INFO;
+    private static volatile WsTracer sInstance;
+    private static final AtomicInteger sNextConnectionId = new AtomicInteger(1);
+
+    private final int mMask;
+    private final AtomicLongArray mEvents;
+    private final AtomicLong mNext = new AtomicLong();
+
+    private WsTracer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1) << 1);
+        mMask = size - 1;
+        mEvents = new AtomicLongArray(size * WORDS);
+    }
+
+    private static WsTracer get() {
+        if (sInstance == null) {
+            synchronized (WsTracer.class) {
+                if (sInstance == null) sInstance = new WsTracer(DEFAULT_CAPACITY);
+            }
+        }
+        return sInstance;
+    }
+
+    public static void setLevel(int level) {
+        sLevel = level;
+    }
+
+    public static int getLevel() {
+        return sLevel;
+    }
+
+    public static boolean isEnabled(int level) {
+        return level <= sLevel;
+    }
+
+    /** 每个 WsManager 一个，用于区分事件属于哪个连接；0 留给 mock 服务端 */
+    public static int newConnectionId() {
+        return sNextConnectionId.getAndIncrement();
+    }
+
+    public static void trace(int level, int event, int connection, long a, long b) {
+        if (level > sLevel) return;
+        get().record(level, event, connection, a, b);
+    }
+
+    public static void trace(int level, int event, int connection, long a) {
+        if (level > sLevel) return;
+        get().record(level, event, connection, a, 0);
+    }
+
+    private void record(int level, int event, int connection, long a, long b) {
+        long seq = mNext.getAndIncrement();
+        int base = (int) (seq & mMask) * WORDS;
+        // 先作废序号戳，写完内容再发布，dump 能识别出写了一半的槽位
+        mEvents.lazySet(base, 0);
+        mEvents.lazySet(base + 1, System.nanoTime());
+        mEvents.lazySet(base + 2, (long) event << 48 | (long) level << 40 | (connection & 0xffffffffL));
+        mEvents.lazySet(base + 3, a);
+        mEvents.lazySet(base + 4, b);
+        mEvents.lazySet(base, seq + 1);
+    }
+
+    /**
+     * 把缓冲区里的事件按时间顺序写到文件，写入期间新的事件照常记录；在后台线程调用
+     * @return 写出的事件数
+     */
+    public static int dump(File file) throws IOException {
+        return get().dumpTo(file);
+    }
+
+    private int dumpTo(File file) throws IOException {
+        long end = mNext.get();
+        long start = Math.max(0, end - (mMask + 1));
+        int count = 0;
+        long[] event = new long[WORDS - 1];
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            // 用同一时刻的 nanoTime 和墙上时间做基准，解码时换算成绝对时间
+            out.writeLong(System.nanoTime());
+            out.writeLong(System.currentTimeMillis());
+            for (long seq = start; seq < end; seq++) {
+                if (!read(seq, event)) continue;
+                out.writeLong(event[0]);
+                out.writeLong(event[1]);
+                out.writeLong(event[2]);
+                out.writeLong(event[3]);
+                count++;
+            }
+        }
+        if (!tmp.renameTo(file)) throw new IOException("rename " + tmp + " failed");
+        return count;
+    }
+
+    private boolean read(long seq, long[] event) {
+        int base = (int) (seq & mMask) * WORDS;
+        if (mEvents.get(base) != seq + 1) return false;
+        for (int i = 1; i < WORDS; i++) {
+            event[i - 1] = mEvents.get(base + i);
+        }
+        return mEvents.get(base) == seq + 1;
+    }
+
+    public static String eventName(int event) {
+        return event > 0 && event < EVENT_COUNT ? EVENT_NAMES[event] : EVENT_NAMES[0] + "(" + event + ")";
+    }
+
+    public static String levelName(int level) {
+        return level >= 0 && level < LEVEL_NAMES.length ? LEVEL_NAMES[level] : String.valueOf(level);
+    }
+}
@@ -0,0 +1,171 @@
+package com.tbj.call.ws;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import okio.Sink;
+import okio.Source;
+
+/**
+ * 一次流式传输，发送由 WsManager.sendStream 返回，接收由 WsStreamHandler.onStreamOpen 拿到
+ *
+ * 和 WsCall 一样实现 Future 并提供 whenComplete 回调，结果是传输的字节数：
+ * 发送方在对端确认全部写入后完成，接收方在全部写入 Sink 并关闭后完成。
+ * 失败原因：连接断开、连接释放、对端拒绝或取消是 IOException，读 Source / 写 Sink 出错是对应的 IOException
+ */
+public final class WsTransfer implements Future<Long> {
+
+    public interface Callback {
+        /** error 为 null 表示成功，传输的字节数见 getTransferred */
+        void onComplete(WsTransfer transfer, Exception error);
+    }
+
+    private static final int PENDING = 0;
+    private static final int DONE = 1;
+    private static final int CANCELLED = 2;
+
+    private final WsStreams mStreams;
+    private final int mId;
+    private final int mType;
+    private final long mLength;
+    private final boolean mIncoming;
+    private final Executor mExecutor;
+
+    private int mState = PENDING;
+    private Exception mError;
+    private Callback mCallback;
+    volatile long mTransferred;
+
+    // 发送方，只在 ws-stream 线程上读写
+    Source mSource;
+    int mPriority;
+    long mSent;
+    long mGranted;
+    WsFrame mPendingFrame;  // 发送队列满时留着下次重试
+    long mPendingBytes;
+    boolean mEndSent;
+
+    // 接收方，持有 this 的锁时读写
+    Sink mSink;
+
+    WsTransfer(WsStreams streams, int id, int type, long length, boolean incoming, Executor executor) {
+        mStreams = streams;
+        mId = id;
+        mType = type;
+        mLength = length;
+        mIncoming = incoming;
+        mExecutor = executor;
+    }
+
+    public int getId() {
+        return mId;
+    }
+
+    public int getType() {
+        return mType;
+    }
+
+    /** 发送方声明的总长度，-1 表示未知 */
+    public long getLength() {
+        return mLength;
+    }
+
+    public boolean isIncoming() {
+        return mIncoming;
+    }
+
+    /** 发送方是对端已确认的字节数，接收方是已写入 Sink 的字节数 */
+    public long getTransferred() {
+        return mTransferred;
+    }
+
+    /**
+     * 传输结束后回调，已经结束时立即分发；只保留最后一次设置的回调
+     */
+    public WsTransfer whenComplete(Callback callback) {
+        boolean done;
+        synchronized (this) {
+            mCallback = callback;
+            done = mState == DONE;
+        }
+        if (done) notifyCallback(callback);
+        return this;
+    }
+
+    /**
+     * 取消传输并通知对端，发送方关闭 Source，接收方关闭 Sink（已写入的部分由调用方处理）
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if (mState != PENDING) return false;
+            mState = CANCELLED;
+            notifyAll();
+        }
+        mStreams.onCancelled(this);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mState == CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mState != PENDING;
+    }
+
+    @Override
+    public synchronized Long get() throws InterruptedException, ExecutionException {
+        while (mState == PENDING) wait();
+        return report();
+    }
+
+    @Override
+    public synchronized Long get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long remaining = unit.toNanos(timeout);
+        long deadline = System.nanoTime() + remaining;
+        while (mState == PENDING) {
+            if (remaining <= 0) throw new TimeoutException();
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            remaining = deadline - System.nanoTime();
+        }
+        return report();
+    }
+
+    private Long report() throws ExecutionException {
+        if (mState == CANCELLED) throw new CancellationException();
+        if (mError != null) throw new ExecutionException(mError);
+        return mTransferred;
+    }
+
+    /** @return false 表示已经完成或被取消 */
+    boolean complete(Exception error) {
+        Callback callback;
+        synchronized (this) {
+            if (mState != PENDING) return false;
+            mState = DONE;
+            mError = error;
+            callback = mCallback;
+            notifyAll();
+        }
+        if (callback != null) notifyCallback(callback);
+        return true;
+    }
+
+    private void notifyCallback(Callback callback) {
+        mExecutor.execute(() -> callback.onComplete(this, mError));
+    }
+
+    @Override
+    public String toString() {
+        return "WsTransfer{" + (mIncoming ? "in " : "out ") + mId + ", type " + mType
+                + ", " + mTransferred + "/" + mLength + "}";
+    }
+}
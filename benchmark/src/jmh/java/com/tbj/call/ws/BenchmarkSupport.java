@@ -0,0 +1,114 @@
+package com.tbj.call.ws;
+
+import android.content.Context;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Request;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+/**
+ * 基准共用的工具：不联网的 WebSocket、直接调用 WsManager 内部监听器、等待异步结果
+ */
+final class BenchmarkSupport {
+
+    static final Context CONTEXT = new Context();
+
+    private static final long AWAIT_TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+
+    private BenchmarkSupport() {
+    }
+
+    /** 不发到网络，只计数；queueSize 恒为 0，发送队列不会因为水位线停下 */
+    static final class NullWebSocket implements WebSocket {
+
+        final AtomicLong mSent = new AtomicLong();
+        private final Request mRequest = new Request.Builder().url("http://127.0.0.1/").build();
+
+        @Override
+        public Request request() {
+            return mRequest;
+        }
+
+        @Override
+        public long queueSize() {
+            return 0;
+        }
+
+        @Override
+        public boolean send(String text) {
+            mSent.incrementAndGet();
+            return true;
+        }
+
+        @Override
+        public boolean send(ByteString bytes) {
+            mSent.incrementAndGet();
+            return true;
+        }
+
+        @Override
+        public boolean close(int code, String reason) {
+            return true;
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+
+    /**
+     * 让 manager 认为 webSocket 是当前连接，之后可以直接调用 listenerOf(manager) 模拟 OkHttp 读线程的回调
+     */
+    static void attach(WsManager manager, WebSocket webSocket) {
+        try {
+            Field field = WsManager.class.getDeclaredField("mWebSocket");
+            field.setAccessible(true);
+            field.set(manager, webSocket);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static WebSocketListener listenerOf(WsManager manager) {
+        try {
+            Field field = WsManager.class.getDeclaredField("mWebSocketListener");
+            field.setAccessible(true);
+            return (WebSocketListener) field.get(manager);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** 自旋等到 counter 达到 target，超时抛异常，避免基准卡死 */
+    static void await(AtomicLong counter, long target) {
+        long deadline = System.nanoTime() + AWAIT_TIMEOUT;
+        while (counter.get() < target) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("timeout, expect " + target + " got " + counter.get());
+            }
+            Thread.yield();
+        }
+    }
+
+    /** 固定长度的非数字文本，不会触发 WsManager 里按数字取模的重连 */
+    static String text(int size) {
+        StringBuilder builder = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            builder.append((char) ('a' + i % 26));
+        }
+        return builder.toString();
+    }
+
+    static ByteString bytes(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) i;
+        }
+        return ByteString.of(data);
+    }
+}
@@ -0,0 +1,67 @@
+package com.tbj.call.ws;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 监听回调的分发：每次调用投递 BATCH 个回调并等它们全部执行完，比较各个 dispatchPolicy 的吞吐和分配
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DispatchBenchmark {
+
+    static final int BATCH = 1000;
+
+    @Param({"SERIAL", "SHARED_POOL", "DIRECT"})
+    public String policy;
+
+    private WsDispatcher mDispatcher;
+    private final AtomicLong mDone = new AtomicLong();
+    private long mSubmitted;
+    // 提前创建，分配速率只反映分发器自己的开销
+    private final Runnable mTask = mDone::incrementAndGet;
+
+    @Setup
+    public void setup() {
+        int value;
+        switch (policy) {
+            case "SERIAL":
+                value = WsDispatcher.SERIAL;
+                break;
+            case "DIRECT":
+                value = WsDispatcher.DIRECT;
+                break;
+            default:
+                value = WsDispatcher.SHARED_POOL;
+        }
+        mDispatcher = WsDispatcher.create(value, "benchmark");
+    }
+
+    @TearDown
+    public void tearDown() {
+        mDispatcher.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long execute() {
+        for (int i = 0; i < BATCH; i++) {
+            mDispatcher.execute(mTask);
+        }
+        mSubmitted += BATCH;
+        BenchmarkSupport.await(mDone, mSubmitted);
+        return mSubmitted;
+    }
+}
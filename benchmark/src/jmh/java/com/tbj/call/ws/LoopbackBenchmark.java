@@ -0,0 +1,149 @@
+package com.tbj.call.ws;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.ByteString;
+
+/**
+ * 端到端：WsManager 通过本机回环连到 MockWebServer，服务端原样回显
+ *
+ * - roundTrip：发一条等回显，衡量单条消息的往返延迟（吞吐的倒数）
+ * - pipelined：连续发 BATCH 条再等全部回显，衡量发送队列、OkHttp 读写线程和分发的整体吞吐
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class LoopbackBenchmark {
+
+    static final int BATCH = 256;
+
+    @Param({"text", "binary"})
+    public String kind;
+
+    @Param({"64", "4096"})
+    public int size;
+
+    private MockWebServer mServer;
+    private OkHttpClient mClient;
+    private WsManager mManager;
+    private String mText;
+    private ByteString mBytes;
+    private final AtomicLong mOpened = new AtomicLong();
+    private final AtomicLong mReceived = new AtomicLong();
+    private final AtomicLong mClosed = new AtomicLong();
+    private long mSent;
+
+    @Setup
+    public void setup() throws IOException {
+        mText = BenchmarkSupport.text(size);
+        mBytes = BenchmarkSupport.bytes(size);
+
+        mServer = new MockWebServer();
+        mServer.enqueue(new MockResponse().withWebSocketUpgrade(new WebSocketListener() {
+            @Override
+            public void onMessage(WebSocket webSocket, String text) {
+                // 和 MockService 一样回应心跳，心跳不计入回显
+                if (text.startsWith(HeartbeatEngine.PING_PREFIX)) {
+                    webSocket.send(HeartbeatEngine.PONG_PREFIX + text.substring(HeartbeatEngine.PING_PREFIX.length()));
+                    return;
+                }
+                webSocket.send(text);
+            }
+
+            @Override
+            public void onMessage(WebSocket webSocket, ByteString bytes) {
+                webSocket.send(bytes);
+            }
+
+            @Override
+            public void onClosing(WebSocket webSocket, int code, String reason) {
+                webSocket.close(code, reason);
+            }
+        }));
+        mServer.start();
+
+        // 单独的 Dispatcher，结束时关掉它的线程，否则 fork 出的 JVM 要等空闲线程超时才能退出
+        mClient = WsClients.newBuilder().dispatcher(new Dispatcher()).build();
+        mManager = new WsManager.Builder(BenchmarkSupport.CONTEXT)
+                .client(mClient)
+                .url("ws://" + mServer.getHostName() + ":" + mServer.getPort() + "/")
+                .listener(new WsStatusListener() {
+                    @Override
+                    public void onOpen(Response response) {
+                        mOpened.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onMessage(String text) {
+                        mReceived.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onMessage(ByteString bytes) {
+                        mReceived.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onClosed(int code, String reason) {
+                        mClosed.incrementAndGet();
+                    }
+                })
+                .outboxCapacity(0)
+                .dispatchPolicy(WsDispatcher.DIRECT)
+                .build();
+        mManager.startConnect();
+        BenchmarkSupport.await(mOpened, 1);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mManager.release();
+        // MockWebServer 要等 WebSocket 关闭握手完成才能结束连接线程
+        BenchmarkSupport.await(mClosed, 1);
+        mServer.shutdown();
+        mClient.dispatcher().executorService().shutdown();
+    }
+
+    private void send() {
+        boolean queued = "text".equals(kind) ? mManager.sendMessage(mText) : mManager.sendMessage(mBytes);
+        if (!queued) throw new IllegalStateException("send queue full");
+        mSent++;
+    }
+
+    @Benchmark
+    public long roundTrip() {
+        send();
+        BenchmarkSupport.await(mReceived, mSent);
+        return mSent;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long pipelined() {
+        for (int i = 0; i < BATCH; i++) {
+            send();
+        }
+        BenchmarkSupport.await(mReceived, mSent);
+        return mSent;
+    }
+}
@@ -0,0 +1,161 @@
+package com.tbj.call.ws;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+/**
+ * WsManager 收到一条消息的处理开销：文本、原始 ByteString、binaryCodec 帧三条路径；
+ * frameUtf8 / frameUtf8Interned 对比监听里调用 WsMessage.utf8() 时有没有开启 Builder.intern；
+ * frameRouted / frameUnsubscribed 是带 topic 的帧经过 WsRouter 投递给订阅者、没人订阅直接回收
+ *
+ * 直接调用 WsManager 内部的 WebSocketListener，模拟 OkHttp 读线程，不经过网络；
+ * 分发策略是 DIRECT，结果包含到业务监听为止的全部工作
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MessageBenchmark {
+
+    @Param({"64", "1024", "16384"})
+    public int size;
+
+    private WsManager mRaw;
+    private WsManager mCodec;
+    private WsManager mUtf8;
+    private WsManager mInterned;
+    private WebSocketListener mRawListener;
+    private WebSocketListener mCodecListener;
+    private WebSocketListener mUtf8Listener;
+    private WebSocketListener mInternedListener;
+    private final WebSocket mWebSocket = new BenchmarkSupport.NullWebSocket();
+
+    private String mText;
+    private ByteString mBytes;
+    private ByteString mFrame;
+    private ByteString mTopicFrame;
+    private ByteString mUnsubscribedFrame;
+
+    private long mReceived;
+
+    private final WsStatusListener mListener = new WsStatusListener() {
+        @Override
+        public void onMessage(String text) {
+            mReceived += text.length();
+        }
+
+        @Override
+        public void onMessage(ByteString bytes) {
+            mReceived += bytes.size();
+        }
+
+        @Override
+        public void onMessage(WsMessage message) {
+            mReceived += message.size();
+        }
+    };
+
+    private final WsStatusListener mDecodingListener = new WsStatusListener() {
+        @Override
+        public void onMessage(WsMessage message) {
+            mReceived += message.utf8().length();
+        }
+    };
+
+    @Setup
+    public void setup() {
+        mRaw = newManager(newBuilder(mListener));
+        mCodec = newManager(newBuilder(mListener).binaryCodec(true));
+        mUtf8 = newManager(newBuilder(mDecodingListener).binaryCodec(true));
+        mInterned = newManager(newBuilder(mDecodingListener).intern());
+        mRawListener = BenchmarkSupport.listenerOf(mRaw);
+        mCodecListener = BenchmarkSupport.listenerOf(mCodec);
+        mUtf8Listener = BenchmarkSupport.listenerOf(mUtf8);
+        mInternedListener = BenchmarkSupport.listenerOf(mInterned);
+
+        mText = BenchmarkSupport.text(size);
+        mBytes = BenchmarkSupport.bytes(size);
+        mFrame = WsFrameCodec.encodeFrame(1, 0, 0, mBytes);
+        mTopicFrame = WsFrameCodec.encodeTopicFrame(1, "quotes/btc/usd", mBytes);
+        mUnsubscribedFrame = WsFrameCodec.encodeTopicFrame(1, "news/markets", mBytes);
+        mCodec.getRouter().subscribe("quotes/", message -> mReceived += message.size());
+        mCodec.getRouter().subscribe("quotes/eth", message -> mReceived += message.size());
+    }
+
+    private WsManager.Builder newBuilder(WsStatusListener listener) {
+        return new WsManager.Builder(BenchmarkSupport.CONTEXT)
+                .url("ws://127.0.0.1:1/benchmark")
+                .listener(listener)
+                .outboxCapacity(0)
+                .dispatchPolicy(WsDispatcher.DIRECT);
+    }
+
+    private WsManager newManager(WsManager.Builder builder) {
+        WsManager manager = builder.build();
+        BenchmarkSupport.attach(manager, mWebSocket);
+        return manager;
+    }
+
+    @TearDown
+    public void tearDown() {
+        mRaw.release();
+        mCodec.release();
+        mUtf8.release();
+        mInterned.release();
+    }
+
+    @Benchmark
+    public long text() {
+        mRawListener.onMessage(mWebSocket, mText);
+        return mReceived;
+    }
+
+    @Benchmark
+    public long bytes() {
+        mRawListener.onMessage(mWebSocket, mBytes);
+        return mReceived;
+    }
+
+    @Benchmark
+    public long frame() {
+        mCodecListener.onMessage(mWebSocket, mFrame);
+        return mReceived;
+    }
+
+    @Benchmark
+    public long frameRouted() {
+        mCodecListener.onMessage(mWebSocket, mTopicFrame);
+        return mReceived;
+    }
+
+    @Benchmark
+    public long frameUnsubscribed() {
+        mCodecListener.onMessage(mWebSocket, mUnsubscribedFrame);
+        return mReceived;
+    }
+
+    @Benchmark
+    public long frameUtf8() {
+        mUtf8Listener.onMessage(mWebSocket, mFrame);
+        return mReceived;
+    }
+
+    /** 1024、16384 超过默认的 maxLength（256），不会驻留 */
+    @Benchmark
+    public long frameUtf8Interned() {
+        mInternedListener.onMessage(mWebSocket, mFrame);
+        return mReceived;
+    }
+}
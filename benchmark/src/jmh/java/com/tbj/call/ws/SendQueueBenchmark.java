@@ -0,0 +1,83 @@
+package com.tbj.call.ws;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.WebSocket;
+
+/**
+ * 发送队列：每次调用入队 BATCH 帧，等发送线程全部写出（FLUSHED），包含入队、唤醒、编码和写出
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SendQueueBenchmark {
+
+    static final int BATCH = 256;
+
+    @Param({"text", "binary", "message"})
+    public String kind;
+
+    @Param({"64", "4096"})
+    public int size;
+
+    private WsSendQueue mQueue;
+    private WsFrame mFrame;
+    private final BenchmarkSupport.NullWebSocket mWebSocket = new BenchmarkSupport.NullWebSocket();
+    private final AtomicLong mFlushed = new AtomicLong();
+    private long mEnqueued;
+
+    @Setup
+    public void setup() {
+        switch (kind) {
+            case "text":
+                mFrame = WsFrame.text(BenchmarkSupport.text(size));
+                break;
+            case "binary":
+                mFrame = WsFrame.binary(BenchmarkSupport.bytes(size));
+                break;
+            default:
+                mFrame = WsFrame.message(1, BenchmarkSupport.bytes(size));
+        }
+        mQueue = new WsSendQueue("benchmark", BATCH, WsSendQueue.DEFAULT_HIGH_WATERMARK,
+                WsSendQueue.DEFAULT_LOW_WATERMARK, WsPriority.WEIGHTED, WsPriority.DEFAULT_WEIGHTS,
+                WsSendQueue.DEFAULT_FRAGMENT_SIZE, null, null, new WsSendQueue.Callback() {
+            @Override
+            public WebSocket writableWebSocket() {
+                return mWebSocket;
+            }
+
+            @Override
+            public void onSendResult(int result, WsFrame frame) {
+                if (result == WsSendResult.FLUSHED) mFlushed.incrementAndGet();
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        mQueue.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long enqueueDrain() {
+        for (int i = 0; i < BATCH; i++) {
+            if (!mQueue.enqueue(mFrame)) throw new IllegalStateException("queue full");
+        }
+        mEnqueued += BATCH;
+        BenchmarkSupport.await(mFlushed, mEnqueued);
+        return mEnqueued;
+    }
+}
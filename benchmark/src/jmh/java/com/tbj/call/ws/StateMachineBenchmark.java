@@ -0,0 +1,55 @@
+package com.tbj.call.ws;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 重连相关的状态迁移
+ *
+ * - reconnectCycle：单线程走一遍 CONNECTED → RECONNECTING → CONNECTING → CONNECTED
+ * - contended：4 个线程同时触发断线（onFailure、心跳超时、网络切换同时到达的情况），
+ *   只有迁移成功的一方继续连接，其余的在 CAS 上合并
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class StateMachineBenchmark {
+
+    @State(Scope.Thread)
+    public static class Local {
+        final WsStateMachine mState = new WsStateMachine((from, to) -> {
+        });
+
+        {
+            mState.moveTo(WsStatus.CONNECTING);
+            mState.transition(WsStatus.CONNECTING, WsStatus.CONNECTED);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Shared extends Local {
+    }
+
+    @Benchmark
+    public boolean reconnectCycle(Local local) {
+        WsStateMachine state = local.mState;
+        return state.moveTo(WsStatus.RECONNECTING) >= 0
+                & state.transition(WsStatus.RECONNECTING, WsStatus.CONNECTING)
+                & state.transition(WsStatus.CONNECTING, WsStatus.CONNECTED);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean contended(Shared shared) {
+        WsStateMachine state = shared.mState;
+        if (state.moveTo(WsStatus.RECONNECTING) < 0) return false;
+        return state.transition(WsStatus.RECONNECTING, WsStatus.CONNECTING)
+                && state.transition(WsStatus.CONNECTING, WsStatus.CONNECTED);
+    }
+}
@@ -0,0 +1,21 @@
+package android.content;
+
+import java.io.File;
+
+/** 基准用的替身，只提供 ws 包用到的方法 */
+public class Context {
+
+    public static final String CONNECTIVITY_SERVICE = "connectivity";
+
+    public File getFilesDir() {
+        return new File(System.getProperty("java.io.tmpdir"));
+    }
+
+    public String getString(int resId) {
+        return "";
+    }
+
+    public Object getSystemService(String name) {
+        return null;
+    }
+}
@@ -0,0 +1,8 @@
+package android.net;
+
+public class ConnectivityManager {
+
+    public NetworkInfo getActiveNetworkInfo() {
+        return null;
+    }
+}
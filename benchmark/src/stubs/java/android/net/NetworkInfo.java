@@ -0,0 +1,12 @@
+package android.net;
+
+public class NetworkInfo {
+
+    public boolean isAvailable() {
+        return false;
+    }
+
+    public String getTypeName() {
+        return "";
+    }
+}
@@ -0,0 +1,13 @@
+package android.os;
+
+public class Build {
+
+    public static class VERSION {
+        // 和 app 的 targetSdkVersion 一致，走 JVM 上也可用的分支
+        public static final int SDK_INT = 27;
+    }
+
+    public static class VERSION_CODES {
+        public static final int KITKAT = 19;
+    }
+}
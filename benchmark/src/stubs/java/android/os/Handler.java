@@ -0,0 +1,13 @@
+package android.os;
+
+/** 没有消息循环，post 直接在调用线程执行 */
+public class Handler {
+
+    public Handler(Looper looper) {
+    }
+
+    public boolean post(Runnable r) {
+        r.run();
+        return true;
+    }
+}
@@ -0,0 +1,25 @@
+package android.util;
+
+/** 不输出，避免日志 IO 混进基准结果；参数拼接的开销仍然计算在内，和真机一致 */
+public final class Log {
+
+    public static int i(String tag, String msg) {
+        return 0;
+    }
+
+    public static int w(String tag, String msg) {
+        return 0;
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+
+    public static int e(String tag, String msg) {
+        return 0;
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return 0;
+    }
+}
@@ -0,0 +1,8 @@
+package com.tbj.call;
+
+import android.content.Context;
+
+public class App {
+
+    public static Context sContext = new Context();
+}
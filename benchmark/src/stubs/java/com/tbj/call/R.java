@@ -0,0 +1,8 @@
+package com.tbj.call;
+
+public final class R {
+
+    public static final class string {
+        public static final int error_websocket_config = 0;
+    }
+}
@@ -0,0 +1,82 @@
+package com.tbj.call.ws;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * WsTracer.dump 文件的离线解码，每个事件一行：
+ *
+ *   2019-03-01 12:00:00.123456 +1.234567ms I #1 text_in 128 0
+ *
+ * 时间是按 dump 时记录的墙上时间换算的绝对时间，后面是和上一个事件的间隔。
+ * 在电脑上运行，放在 benchmark 模块的 tools 源码集里，不打进 APK：
+ *
+ *   adb pull /data/data/com.tbj.call/files/ws-trace.bin
+ *   ./gradlew :benchmark:decodeTrace -Ptrace=ws-trace.bin
+ */
+public final class WsTraceDecoder {
+
+    private WsTraceDecoder() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: WsTraceDecoder <trace file>");
+            System.exit(1);
+        }
+        try (InputStream in = new FileInputStream(args[0])) {
+            int count = decode(in, System.out);
+            System.err.println(count + " events");
+        }
+    }
+
+    /**
+     * @return 解码的事件数
+     */
+    public static int decode(InputStream input, Appendable out) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+        if (in.readInt() != WsTracer.FILE_MAGIC) throw new IOException("not a ws trace file");
+        int version = in.readInt();
+        if (version != WsTracer.FILE_VERSION) throw new IOException("unsupported version " + version);
+        long baseNanos = in.readLong();
+        long baseMillis = in.readLong();
+
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+        int count = 0;
+        long previous = 0;
+        while (true) {
+            long nanos;
+            try {
+                nanos = in.readLong();
+            } catch (EOFException e) {
+                break;
+            }
+            long header = in.readLong();
+            long a = in.readLong();
+            long b = in.readLong();
+
+            // 换算成墙上时间的纳秒数，事件都在 dump 之前，nanos - baseNanos 为负数
+            long wallNanos = baseMillis * 1000000 + (nanos - baseNanos);
+            long micros = wallNanos % 1000000 / 1000;
+            out.append(format.format(new Date(wallNanos / 1000000)))
+                    .append(String.format(Locale.US, "%03d", micros))
+                    .append(String.format(Locale.US, " +%.6fms ", count == 0 ? 0 : (nanos - previous) / 1e6))
+                    .append(WsTracer.levelName((int) (header >>> 40 & 0xff)))
+                    .append(" #").append(String.valueOf(header & 0xffffffffL))
+                    .append(' ').append(WsTracer.eventName((int) (header >>> 48)))
+                    .append(' ').append(String.valueOf(a))
+                    .append(' ').append(String.valueOf(b))
+                    .append('\n');
+            previous = nanos;
+            count++;
+        }
+        return count;
+    }
+}